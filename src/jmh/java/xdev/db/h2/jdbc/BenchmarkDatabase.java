@@ -0,0 +1,99 @@
+/*
+ * SqlEngine Database Adapter H2 - XAPI SqlEngine Database Adapter for H2
+ * Copyright © 2003 XDEV Software (https://xdev.software)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package xdev.db.h2.jdbc;
+
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import xdev.db.DBDataSource.Parameter;
+
+
+/**
+ * In-memory H2 database shared by the benchmarks. The database lives as long
+ * as the keep-alive connection is open.
+ */
+final class BenchmarkDatabase implements AutoCloseable
+{
+	private final String			name;
+	private final Connection		keepAlive;
+	
+	
+	BenchmarkDatabase(final String name) throws SQLException
+	{
+		this.name = name;
+		this.keepAlive = DriverManager.getConnection("jdbc:h2:mem:" + name,"SA","");
+	}
+	
+	
+	/**
+	 * Creates <code>count</code> tables named <code>T0</code> ...
+	 * <code>Tn</code> with a primary key, defaults and a secondary index.
+	 */
+	BenchmarkDatabase createTables(final int count) throws SQLException
+	{
+		try(Statement statement = this.keepAlive.createStatement())
+		{
+			for(int i = 0; i < count; i++)
+			{
+				statement.execute("CREATE TABLE T" + i + " (ID INT PRIMARY KEY, "
+						+ "NAME VARCHAR(100) DEFAULT 'none' NOT NULL, AMOUNT DECIMAL(10,2), "
+						+ "CREATED TIMESTAMP DEFAULT CURRENT_TIMESTAMP, UNIQUE (NAME))");
+				statement.execute("CREATE INDEX T" + i + "_AMOUNT ON T" + i + " (AMOUNT)");
+			}
+		}
+		return this;
+	}
+	
+	
+	void execute(final String sql) throws SQLException
+	{
+		try(Statement statement = this.keepAlive.createStatement())
+		{
+			statement.execute(sql);
+		}
+	}
+	
+	
+	/**
+	 * @return a data source on this database, with the metadata cache
+	 *         disabled unless overridden by <code>parameters</code>
+	 */
+	H2JDBCDataSource createDataSource(final Parameter<?>... parameters)
+	{
+		final H2JDBCDataSource dataSource = new H2JDBCDataSource();
+		final Parameter[] defaults = dataSource.getDefaultParameters();
+		final Parameter[] all = new Parameter[defaults.length + 3 + parameters.length];
+		System.arraycopy(defaults,0,all,0,defaults.length);
+		all[defaults.length] = H2JDBCDataSource.EMBEDDED.clone(true);
+		all[defaults.length + 1] = H2JDBCDataSource.CATALOG.clone("mem:" + this.name);
+		all[defaults.length + 2] = H2JDBCDataSource.METADATA_CACHE_SIZE.clone(0);
+		System.arraycopy(parameters,0,all,defaults.length + 3,parameters.length);
+		dataSource.setParameters(all);
+		return dataSource;
+	}
+	
+	
+	@Override
+	public void close() throws SQLException
+	{
+		this.keepAlive.close();
+	}
+}
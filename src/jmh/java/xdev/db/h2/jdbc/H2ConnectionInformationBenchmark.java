@@ -0,0 +1,66 @@
+/*
+ * SqlEngine Database Adapter H2 - XAPI SqlEngine Database Adapter for H2
+ * Copyright © 2003 XDEV Software (https://xdev.software)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package xdev.db.h2.jdbc;
+
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Creation of the JDBC connection URL for embedded and server databases.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class H2ConnectionInformationBenchmark
+{
+	private final H2Dbms					dbms		= new H2Dbms();
+	private final H2ConnectionInformation	embedded	= new H2ConnectionInformation(
+																"localhost",5435,true,"SA","",
+																"data/bench","",this.dbms);
+	private final H2ConnectionInformation	server		= new H2ConnectionInformation(
+																"localhost",5435,false,"SA","",
+																"bench","",this.dbms);
+	
+	
+	@Benchmark
+	public String embedded()
+	{
+		return this.embedded.createJdbcConnectionUrl();
+	}
+	
+	
+	@Benchmark
+	public String server()
+	{
+		return this.server.createJdbcConnectionUrl();
+	}
+}
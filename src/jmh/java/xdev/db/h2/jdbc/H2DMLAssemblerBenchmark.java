@@ -0,0 +1,115 @@
+/*
+ * SqlEngine Database Adapter H2 - XAPI SqlEngine Database Adapter for H2
+ * Copyright © 2003 XDEV Software (https://xdev.software)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package xdev.db.h2.jdbc;
+
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.xdev.jadoth.sqlengine.SELECT;
+import com.xdev.jadoth.sqlengine.internal.tables.SqlTableIdentity;
+
+
+/**
+ * Assembly of <code>SELECT</code>s by {@link H2DMLAssembler}, without any
+ * database access: the benchmarks call the assembler directly, so they
+ * measure only the SQL generation. Run with <code>-prof gc</code> for the
+ * allocation rate.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class H2DMLAssemblerBenchmark
+{
+	private static final String[]	KEY_COLUMNS	= {"NAME","ID"};
+	
+	private final H2DMLAssembler	assembler	= new H2DMLAssembler(new H2Dbms());
+	private final SqlTableIdentity	table		= new SqlTableIdentity("PUBLIC","T0","T");
+	private final SELECT			select		= new SELECT().FROM(this.table).WHERE(
+														"AMOUNT > 10 AND NAME LIKE 'A%'");
+	private final SELECT			page		= new SELECT().FROM(this.table)
+														.WHERE("AMOUNT > 10")
+														.OFFSET_SKIP_ROWS(1000)
+														.FETCH_FIRST_ROWS_ONLY(50);
+	private final SELECT			keysetPage	= new SELECT()
+														.FROM(this.table)
+														.WHERE("(AMOUNT > 10) AND "
+																+ H2DMLAssembler.assembleKeysetCondition(
+																		KEY_COLUMNS,false))
+														.ORDER_BY((Object[])H2DMLAssembler
+																.assembleKeysetOrder(KEY_COLUMNS,
+																		false))
+														.FETCH_FIRST_ROWS_ONLY(50);
+	private final StringBuilder		sb			= new StringBuilder(256);
+	
+	
+	@Benchmark
+	public int select()
+	{
+		return assemble(this.select);
+	}
+	
+	
+	/**
+	 * Assembles into a fresh builder like the request path does, which
+	 * {@link H2DMLAssembler} presizes to the longest query assembled before.
+	 */
+	@Benchmark
+	public int selectFreshBuilder()
+	{
+		return this.assembler.assembleSELECT(this.select,new StringBuilder(),0,0," ","")
+				.length();
+	}
+	
+	
+	/**
+	 * Includes the <code>LIMIT</code>/<code>OFFSET</code> suffix of
+	 * {@link H2DMLAssembler#assembleSelectRowLimit(SELECT, StringBuilder, int, String, String, int)}.
+	 */
+	@Benchmark
+	public int selectPage()
+	{
+		return assemble(this.page);
+	}
+	
+	
+	@Benchmark
+	public int keysetPage()
+	{
+		return assemble(this.keysetPage);
+	}
+	
+	
+	private int assemble(final SELECT query)
+	{
+		this.sb.setLength(0);
+		return this.assembler.assembleSELECT(query,this.sb,0,0," ","").length();
+	}
+}
@@ -0,0 +1,95 @@
+/*
+ * SqlEngine Database Adapter H2 - XAPI SqlEngine Database Adapter for H2
+ * Copyright © 2003 XDEV Software (https://xdev.software)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package xdev.db.h2.jdbc;
+
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import xdev.db.DBMetaData;
+import xdev.db.DBMetaData.TableInfo;
+import xdev.db.DBMetaData.TableMetaData;
+import xdev.db.DBMetaData.TableType;
+
+
+/**
+ * Reading the metadata of all tables of a schema, per table and in bulk.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class H2JDBCMetaDataBenchmark
+{
+	@Param({"10","100","1000"})
+	public int					tables;
+	
+	@Param({"false","true"})
+	public boolean				bulk;
+	
+	private BenchmarkDatabase	database;
+	private H2JDBCMetaData		metaData;
+	private TableInfo[]			tableInfos;
+	
+	
+	@Setup(Level.Trial)
+	public void setUp() throws Exception
+	{
+		this.database = new BenchmarkDatabase("meta" + this.tables).createTables(this.tables);
+		this.metaData = this.database.createDataSource(
+				H2JDBCDataSource.BULK_METADATA.clone(this.bulk)).getMetaData();
+		this.tableInfos = this.metaData.getTableInfos(TableType.TABLE);
+	}
+	
+	
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception
+	{
+		this.database.close();
+	}
+	
+	
+	@Benchmark
+	public TableMetaData[] getTableMetaData() throws Exception
+	{
+		return this.metaData.getTableMetaData(DBMetaData.INDICES,this.tableInfos);
+	}
+	
+	
+	@Benchmark
+	public TableMetaData[] getTableMetaDataWithRowCount() throws Exception
+	{
+		return this.metaData.getTableMetaData(DBMetaData.INDICES | DBMetaData.ROW_COUNT,
+				this.tableInfos);
+	}
+}
@@ -0,0 +1,113 @@
+/*
+ * SqlEngine Database Adapter H2 - XAPI SqlEngine Database Adapter for H2
+ * Copyright © 2003 XDEV Software (https://xdev.software)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package xdev.db.h2.jdbc;
+
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import xdev.db.ColumnMetaData;
+import xdev.db.DataType;
+import xdev.db.DBMetaData.TableInfo;
+import xdev.db.DBMetaData.TableMetaData;
+import xdev.db.DBMetaData.TableType;
+import xdev.db.Index;
+import xdev.db.Index.IndexType;
+import xdev.db.jdbc.JDBCConnection;
+
+
+/**
+ * The DDL paths of {@link H2JDBCMetaData}: one invocation creates a table,
+ * adds, alters and drops a column, creates and drops an index and finally
+ * drops the table again.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class H2JDBCMetaDataDDLBenchmark
+{
+	private static final String	TABLE	= "BENCH_DDL";
+	
+	private BenchmarkDatabase	database;
+	private H2JDBCMetaData		metaData;
+	private JDBCConnection		jdbcConnection;
+	private TableMetaData		table;
+	private ColumnMetaData		column;
+	private ColumnMetaData		alteredColumn;
+	private Index				index;
+	
+	
+	@Setup(Level.Trial)
+	public void setUp() throws Exception
+	{
+		this.database = new BenchmarkDatabase("ddl");
+		H2JDBCDataSource dataSource = this.database.createDataSource();
+		this.metaData = dataSource.getMetaData();
+		this.jdbcConnection = (JDBCConnection)dataSource.openConnection();
+		
+		ColumnMetaData[] columns = {
+				new ColumnMetaData(TABLE,"ID","ID",DataType.INTEGER,0,0,null,false,true),
+				new ColumnMetaData(TABLE,"NAME","NAME",DataType.VARCHAR,100,0,"none",false,
+						false),
+				new ColumnMetaData(TABLE,"AMOUNT","AMOUNT",DataType.DECIMAL,10,2,null,true,
+						false)};
+		this.table = new TableMetaData(new TableInfo(TableType.TABLE,null,TABLE),columns,
+				new Index[]{new Index("PRIMARY_KEY",IndexType.PRIMARY_KEY,"ID")},0);
+		this.column = new ColumnMetaData(TABLE,"NOTE","NOTE",DataType.VARCHAR,50,0,null,true,
+				false);
+		this.alteredColumn = new ColumnMetaData(TABLE,"NOTE","NOTE",DataType.VARCHAR,200,0,
+				null,true,false);
+		this.index = new Index("BENCH_DDL_NAME",IndexType.UNIQUE,"NAME");
+	}
+	
+	
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception
+	{
+		this.jdbcConnection.close();
+		this.database.close();
+	}
+	
+	
+	@Benchmark
+	public void ddl() throws Exception
+	{
+		this.metaData.createTable(this.jdbcConnection,this.table);
+		this.metaData.addColumn(this.jdbcConnection,this.table,this.column,null,null);
+		this.metaData.alterColumn(this.jdbcConnection,this.table,this.alteredColumn,this.column);
+		this.metaData.createIndex(this.jdbcConnection,this.table,this.index);
+		this.metaData.dropIndex(this.jdbcConnection,this.table,this.index);
+		this.metaData.dropColumn(this.jdbcConnection,this.table,this.alteredColumn);
+		this.database.execute("DROP TABLE " + TABLE);
+	}
+}
@@ -0,0 +1,102 @@
+/*
+ * SqlEngine Database Adapter H2 - XAPI SqlEngine Database Adapter for H2
+ * Copyright © 2003 XDEV Software (https://xdev.software)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package xdev.db.h2.jdbc;
+
+
+/**
+ * Result of {@link H2JDBCConnection#bulkInsert(String, String[], java.util.Iterator)}.
+ */
+public class H2BulkInsertResult
+{
+	private final String	tableName;
+	private final long		rowCount;
+	private final int		batchCount;
+	private final int		commitCount;
+	private final long		duration;
+	
+	
+	public H2BulkInsertResult(final String tableName, final long rowCount, final int batchCount,
+			final int commitCount, final long duration)
+	{
+		this.tableName = tableName;
+		this.rowCount = rowCount;
+		this.batchCount = batchCount;
+		this.commitCount = commitCount;
+		this.duration = duration;
+	}
+	
+	
+	public String getTableName()
+	{
+		return this.tableName;
+	}
+	
+	
+	/**
+	 * @return the number of inserted rows
+	 */
+	public long getRowCount()
+	{
+		return this.rowCount;
+	}
+	
+	
+	/**
+	 * @return the number of executed batches
+	 */
+	public int getBatchCount()
+	{
+		return this.batchCount;
+	}
+	
+	
+	/**
+	 * @return the number of commits
+	 */
+	public int getCommitCount()
+	{
+		return this.commitCount;
+	}
+	
+	
+	/**
+	 * @return the duration of the insert in milliseconds
+	 */
+	public long getDuration()
+	{
+		return this.duration;
+	}
+	
+	
+	/**
+	 * @return the inserted rows per second
+	 */
+	public double getRowsPerSecond()
+	{
+		return this.duration > 0 ? this.rowCount * 1000d / this.duration : this.rowCount;
+	}
+	
+	
+	@Override
+	public String toString()
+	{
+		return String.format("%s: %d rows in %d ms (%.0f rows/s, %d batches, %d commits)",
+				this.tableName,this.rowCount,this.duration,getRowsPerSecond(),this.batchCount,
+				this.commitCount);
+	}
+}
@@ -17,12 +17,17 @@
  */
 package xdev.db.h2.jdbc;
 
+import java.util.Collections;
+import java.util.Map;
+
 import xdev.db.ConnectionInformation;
 
 
 public class H2ConnectionInformation extends ConnectionInformation<H2Dbms>
 {
-	private final boolean	embedded;
+	private final boolean				embedded;
+	private final boolean				inMemory;
+	private final Map<String, String>	settings;
 	
 	
 	// /////////////////////////////////////////////////////////////////////////
@@ -46,10 +51,42 @@ public class H2ConnectionInformation extends ConnectionInformation<H2Dbms>
 	public H2ConnectionInformation(final String host, final int port, final boolean embedded,
 			final String user, final String password, final String database,
 			final String urlExtension, final H2Dbms dbmsAdaptor)
+	{
+		this(host,port,embedded,false,user,password,database,urlExtension,dbmsAdaptor,
+				Collections.<String, String> emptyMap());
+	}
+	
+	
+	/**
+	 * Instantiates a new h2 connection information with database settings.
+	 * 
+	 * @param inMemory
+	 *            <code>true</code> for an embedded in-memory database, which
+	 *            is kept until the JVM exits
+	 * @param user
+	 *            the user
+	 * @param password
+	 *            the password
+	 * @param database
+	 *            the database
+	 * @param urlExtension
+	 *            the extended url properties
+	 * @param dbmsAdaptor
+	 *            the dbms adaptor
+	 * @param settings
+	 *            the database settings appended to the url, settings which
+	 *            are contained in the url extension are skipped
+	 */
+	public H2ConnectionInformation(final String host, final int port, final boolean embedded,
+			final boolean inMemory, final String user, final String password,
+			final String database, final String urlExtension, final H2Dbms dbmsAdaptor,
+			final Map<String, String> settings)
 	{
 		super(host,port,user,password,database,urlExtension,dbmsAdaptor);
 		
 		this.embedded = embedded;
+		this.inMemory = inMemory;
+		this.settings = settings;
 	}
 	
 	
@@ -88,6 +125,12 @@ public class H2ConnectionInformation extends ConnectionInformation<H2Dbms>
 	}
 	
 	
+	public boolean isInMemory()
+	{
+		return this.embedded && this.inMemory;
+	}
+	
+	
 	// /////////////////////////////////////////////////////////////////////////
 	// override methods //
 	// ///////////////////
@@ -101,10 +144,17 @@ public class H2ConnectionInformation extends ConnectionInformation<H2Dbms>
 		StringBuilder sb = new StringBuilder();
 		sb.append("jdbc:h2:");
 		
-		if(this.embedded)
+		if(isInMemory())
+		{
+			sb.append("mem:");
+			sb.append(getDatabase());
+			sb.append(";DB_CLOSE_DELAY=-1");
+		}
+		else if(this.embedded)
 		{
 			String database = getDatabase();
-			if(!(database.startsWith("~") || database.startsWith("file:")))
+			if(!(database.startsWith("~") || database.startsWith("file:")
+					|| database.startsWith("mem:")))
 			{
 				String projectHome = System.getProperty("project.home",null);
 				if(projectHome != null && projectHome.length() > 0)
@@ -130,11 +180,32 @@ public class H2ConnectionInformation extends ConnectionInformation<H2Dbms>
 			sb.append(";IFEXISTS=TRUE");
 		}
 		
+		appendSettings(sb);
+		
 		String url = sb.toString();
 		return appendUrlExtension(url);
 	}
 	
 	
+	private void appendSettings(final StringBuilder sb)
+	{
+		if(this.settings.isEmpty())
+		{
+			return;
+		}
+		
+		String urlExtension = getUrlExtension();
+		urlExtension = urlExtension != null ? ";" + urlExtension.toUpperCase() : "";
+		for(final Map.Entry<String, String> setting : this.settings.entrySet())
+		{
+			if(urlExtension.indexOf(";" + setting.getKey() + "=") < 0)
+			{
+				sb.append(';').append(setting.getKey()).append('=').append(setting.getValue());
+			}
+		}
+	}
+	
+	
 	/**
 	 * @return
 	 * @see com.xdev.jadoth.sqlengine.dbms.DbmsConnectionInformation#getJdbcDriverClassName()
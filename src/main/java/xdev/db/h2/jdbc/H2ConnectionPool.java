@@ -0,0 +1,454 @@
+/*
+ * SqlEngine Database Adapter H2 - XAPI SqlEngine Database Adapter for H2
+ * Copyright © 2003 XDEV Software (https://xdev.software)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package xdev.db.h2.jdbc;
+
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Bounded pool of physical JDBC connections to one H2 database.
+ * <p>
+ * At most <code>maxSize</code> connections are handed out at a time,
+ * callers wait up to <code>maxWait</code> milliseconds for a free one. Idle
+ * connections above <code>minSize</code> are closed after
+ * <code>idleTimeout</code> milliseconds, checked whenever a connection is
+ * borrowed or returned and by a background task, which also opens
+ * connections up to <code>minSize</code> again. Returned connections are
+ * reset by {@link H2ConnectionProxy#reset(Connection)} before they are
+ * reused.
+ * <p>
+ * The pool hands out {@link H2ConnectionProxy proxies} of the physical
+ * connections, which keep a statement cache of
+ * <code>statementCacheSize</code> statements per physical connection.
+ */
+public class H2ConnectionPool
+{
+	private static final int			VALIDATION_TIMEOUT	= 5;
+	
+	private final String				url;
+	private final String				user;
+	private final String				password;
+	private final int					minSize;
+	private final long					idleTimeout;
+	private final long					maxWait;
+	private final boolean				validateOnBorrow;
+	private final int					statementCacheSize;
+	
+	private final Semaphore				permits;
+	private final Deque<IdleConnection>	idle				= new ArrayDeque<>();
+	private int							size;
+	private boolean						closed;
+	private ScheduledExecutorService	evictor;
+	
+	private final AtomicLong			borrowCount			= new AtomicLong();
+	private final AtomicLong			createdCount		= new AtomicLong();
+	private final AtomicLong			totalWaitNanos		= new AtomicLong();
+	private final AtomicLong			maxWaitNanos		= new AtomicLong();
+	
+	
+	public H2ConnectionPool(final String url, final String user, final String password,
+			final int minSize, final int maxSize, final long idleTimeout, final long maxWait,
+			final boolean validateOnBorrow, final int statementCacheSize)
+	{
+		this.url = url;
+		this.user = user;
+		this.password = password;
+		this.minSize = Math.min(minSize,maxSize);
+		this.idleTimeout = idleTimeout;
+		this.maxWait = maxWait;
+		this.validateOnBorrow = validateOnBorrow;
+		this.statementCacheSize = statementCacheSize;
+		this.permits = new Semaphore(maxSize,true);
+	}
+	
+	
+	/**
+	 * Opens the <code>minSize</code> connections and starts the background
+	 * task which evicts idle connections.
+	 * 
+	 * @throws SQLException
+	 *             if a connection can't be opened; the background task is
+	 *             started anyway
+	 */
+	public void start() throws SQLException
+	{
+		synchronized(this)
+		{
+			if(this.evictor == null && !this.closed && this.idleTimeout > 0)
+			{
+				final long period = Math.max(this.idleTimeout / 2,1000);
+				this.evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+					final Thread thread = new Thread(runnable,"H2 pool evictor " + this.url);
+					thread.setDaemon(true);
+					return thread;
+				});
+				this.evictor.scheduleWithFixedDelay(() -> {
+					evictIdle();
+					try
+					{
+						fill();
+					}
+					catch(final SQLException e)
+					{
+						e.printStackTrace();
+					}
+				},period,period,TimeUnit.MILLISECONDS);
+			}
+		}
+		fill();
+	}
+	
+	
+	/**
+	 * Takes an idle connection from the pool or opens a new one, waiting if
+	 * all connections are in use.
+	 * 
+	 * @return the connection, to be handed back with
+	 *         {@link #release(Connection)}
+	 * @throws SQLException
+	 *             if no connection gets free in time or a new one can't be
+	 *             opened
+	 */
+	public Connection borrow() throws SQLException
+	{
+		final long start = System.nanoTime();
+		try
+		{
+			if(!this.permits.tryAcquire(this.maxWait,TimeUnit.MILLISECONDS))
+			{
+				throw new SQLTransientConnectionException("No connection available after "
+						+ this.maxWait + " ms");
+			}
+		}
+		catch(final InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new SQLTransientConnectionException(e);
+		}
+		
+		final long wait = System.nanoTime() - start;
+		this.borrowCount.incrementAndGet();
+		evictIdle();
+		this.totalWaitNanos.addAndGet(wait);
+		long max;
+		while(wait > (max = this.maxWaitNanos.get()) && !this.maxWaitNanos.compareAndSet(max,wait))
+		{
+			// retry
+		}
+		
+		try
+		{
+			Connection connection;
+			while((connection = pollIdle()) != null)
+			{
+				if(!this.validateOnBorrow || connection.isValid(VALIDATION_TIMEOUT))
+				{
+					return connection;
+				}
+				destroy(connection);
+			}
+			
+			synchronized(this)
+			{
+				if(this.closed)
+				{
+					throw new SQLException("Connection pool is closed");
+				}
+				this.size++;
+			}
+			try
+			{
+				connection = openConnection();
+				this.createdCount.incrementAndGet();
+				return connection;
+			}
+			catch(final SQLException e)
+			{
+				synchronized(this)
+				{
+					this.size--;
+				}
+				throw e;
+			}
+		}
+		catch(final SQLException | RuntimeException e)
+		{
+			this.permits.release();
+			throw e;
+		}
+	}
+	
+	
+	/**
+	 * Hands back a borrowed connection. Open transactions are rolled back,
+	 * broken connections are closed instead of being reused.
+	 * 
+	 * @param connection
+	 *            the borrowed connection
+	 */
+	public void release(final Connection connection)
+	{
+		try
+		{
+			boolean reusable;
+			try
+			{
+				reusable = !connection.isClosed();
+				if(reusable)
+				{
+					H2ConnectionProxy.reset(connection);
+				}
+			}
+			catch(final SQLException e)
+			{
+				reusable = false;
+			}
+			
+			synchronized(this)
+			{
+				if(reusable && !this.closed)
+				{
+					this.idle.addFirst(new IdleConnection(connection));
+				}
+				else
+				{
+					reusable = false;
+				}
+			}
+			if(!reusable)
+			{
+				destroy(connection);
+			}
+			evictIdle();
+		}
+		finally
+		{
+			this.permits.release();
+		}
+	}
+	
+	
+	/**
+	 * Opens connections until the pool holds at least <code>minSize</code>
+	 * ones.
+	 * 
+	 * @throws SQLException
+	 *             if a connection can't be opened
+	 */
+	public void fill() throws SQLException
+	{
+		while(true)
+		{
+			synchronized(this)
+			{
+				if(this.closed || this.size >= this.minSize)
+				{
+					return;
+				}
+				this.size++;
+			}
+			
+			final Connection connection;
+			try
+			{
+				connection = openConnection();
+			}
+			catch(final SQLException e)
+			{
+				synchronized(this)
+				{
+					this.size--;
+				}
+				throw e;
+			}
+			this.createdCount.incrementAndGet();
+			
+			synchronized(this)
+			{
+				this.idle.addLast(new IdleConnection(connection));
+			}
+		}
+	}
+	
+	
+	/**
+	 * Closes all idle connections, borrowed ones are closed when they are
+	 * handed back.
+	 */
+	public void close()
+	{
+		final IdleConnection[] connections;
+		synchronized(this)
+		{
+			this.closed = true;
+			if(this.evictor != null)
+			{
+				this.evictor.shutdown();
+				this.evictor = null;
+			}
+			connections = this.idle.toArray(new IdleConnection[this.idle.size()]);
+			this.idle.clear();
+		}
+		for(final IdleConnection connection : connections)
+		{
+			destroy(connection.connection);
+		}
+	}
+	
+	
+	private Connection openConnection() throws SQLException
+	{
+		return H2ConnectionProxy.wrap(
+				DriverManager.getConnection(this.url,this.user,this.password),
+				this.statementCacheSize);
+	}
+	
+	
+	private synchronized Connection pollIdle()
+	{
+		final IdleConnection connection = this.idle.pollFirst();
+		return connection != null ? connection.connection : null;
+	}
+	
+	
+	private void evictIdle()
+	{
+		final long expired = System.currentTimeMillis() - this.idleTimeout;
+		synchronized(this)
+		{
+			for(final Iterator<IdleConnection> it = this.idle.descendingIterator(); it.hasNext()
+					&& this.size > this.minSize;)
+			{
+				final IdleConnection connection = it.next();
+				if(connection.since >= expired)
+				{
+					break;
+				}
+				it.remove();
+				close(connection.connection);
+				this.size--;
+			}
+		}
+	}
+	
+	
+	private void destroy(final Connection connection)
+	{
+		synchronized(this)
+		{
+			this.size--;
+		}
+		close(connection);
+	}
+	
+	
+	private static void close(final Connection connection)
+	{
+		try
+		{
+			H2ConnectionProxy.closePhysical(connection);
+		}
+		catch(final SQLException e)
+		{
+			e.printStackTrace();
+		}
+	}
+	
+	
+	/**
+	 * @return the number of open connections, idle and borrowed
+	 */
+	public synchronized int getSize()
+	{
+		return this.size;
+	}
+	
+	
+	public synchronized int getIdleCount()
+	{
+		return this.idle.size();
+	}
+	
+	
+	public long getBorrowCount()
+	{
+		return this.borrowCount.get();
+	}
+	
+	
+	public long getCreatedCount()
+	{
+		return this.createdCount.get();
+	}
+	
+	
+	/**
+	 * @return the average time in milliseconds callers had to wait for a
+	 *         connection
+	 */
+	public double getAverageWaitTime()
+	{
+		final long count = this.borrowCount.get();
+		return count == 0 ? 0 : this.totalWaitNanos.get() / 1_000_000d / count;
+	}
+	
+	
+	/**
+	 * @return the longest time in milliseconds a caller had to wait for a
+	 *         connection
+	 */
+	public double getMaxWaitTime()
+	{
+		return this.maxWaitNanos.get() / 1_000_000d;
+	}
+	
+	
+	@Override
+	public String toString()
+	{
+		return "size=" + getSize() + ", idle=" + getIdleCount() + ", borrowed="
+				+ getBorrowCount() + ", created=" + getCreatedCount() + ", avgWait="
+				+ getAverageWaitTime() + " ms, maxWait=" + getMaxWaitTime() + " ms";
+	}
+	
+	
+	
+	private static final class IdleConnection
+	{
+		final Connection	connection;
+		final long			since	= System.currentTimeMillis();
+		
+		
+		IdleConnection(final Connection connection)
+		{
+			this.connection = connection;
+		}
+	}
+}
@@ -0,0 +1,289 @@
+/*
+ * SqlEngine Database Adapter H2 - XAPI SqlEngine Database Adapter for H2
+ * Copyright © 2003 XDEV Software (https://xdev.software)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package xdev.db.h2.jdbc;
+
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+
+
+/**
+ * The connection handed out by {@link H2ConnectionPool}: a proxy of a
+ * physical JDBC connection, which stays open when it is closed, and which
+ * takes the statements of {@link Connection#prepareStatement(String)} and
+ * {@link Connection#prepareStatement(String, int)} from the
+ * {@link H2StatementCache} of the physical connection. Closing such a
+ * statement hands it back to the cache.
+ * <p>
+ * The cache belongs to the physical connection, so it survives returning
+ * the connection to the pool.
+ */
+final class H2ConnectionProxy implements InvocationHandler
+{
+	private static final Class<?>[]	PREPARE				= {String.class};
+	private static final Class<?>[]	PREPARE_WITH_KEYS	= {String.class,int.class};
+	
+	private final Connection		connection;
+	private final H2StatementCache	statementCache;
+	private final Connection		proxy;
+	
+	private final boolean			readOnly;
+	private final int				transactionIsolation;
+	private final String			schema;
+	
+	
+	private H2ConnectionProxy(final Connection connection, final int statementCacheSize)
+			throws SQLException
+	{
+		this.connection = connection;
+		this.readOnly = connection.isReadOnly();
+		this.transactionIsolation = connection.getTransactionIsolation();
+		this.schema = connection.getSchema();
+		this.statementCache = statementCacheSize > 0 ? new H2StatementCache(connection,
+				statementCacheSize) : null;
+		this.proxy = (Connection)Proxy.newProxyInstance(Connection.class.getClassLoader(),
+				new Class<?>[]{Connection.class},this);
+	}
+	
+	
+	/**
+	 * @param connection
+	 *            the physical connection
+	 * @param statementCacheSize
+	 *            the maximum number of cached statements, <code>0</code> for
+	 *            no statement cache
+	 * @return the proxy of the connection
+	 * @throws SQLException
+	 *             if the initial state of the connection can't be read
+	 */
+	static Connection wrap(final Connection connection, final int statementCacheSize)
+			throws SQLException
+	{
+		return new H2ConnectionProxy(connection,statementCacheSize).proxy;
+	}
+	
+	
+	/**
+	 * Prepares a connection for its next user: an open transaction is rolled
+	 * back, and auto-commit, read-only mode, transaction isolation and
+	 * schema are restored to their state when the connection was opened.
+	 * 
+	 * @throws SQLException
+	 *             if the connection is broken
+	 */
+	static void reset(final Connection connection) throws SQLException
+	{
+		if(!connection.getAutoCommit())
+		{
+			connection.rollback();
+			connection.setAutoCommit(true);
+		}
+		
+		final H2ConnectionProxy handler = getHandler(connection);
+		if(handler == null)
+		{
+			return;
+		}
+		
+		final Connection physical = handler.connection;
+		if(physical.isReadOnly() != handler.readOnly)
+		{
+			physical.setReadOnly(handler.readOnly);
+		}
+		if(physical.getTransactionIsolation() != handler.transactionIsolation)
+		{
+			physical.setTransactionIsolation(handler.transactionIsolation);
+		}
+		if(handler.schema != null && !handler.schema.equals(physical.getSchema()))
+		{
+			physical.setSchema(handler.schema);
+		}
+		physical.clearWarnings();
+	}
+	
+	
+	/**
+	 * @return the statement cache of the physical connection behind
+	 *         <code>connection</code>, or <code>null</code>
+	 */
+	static H2StatementCache getStatementCache(final Connection connection)
+	{
+		final H2ConnectionProxy handler = getHandler(connection);
+		return handler != null ? handler.statementCache : null;
+	}
+	
+	
+	/**
+	 * Closes the cached statements and the physical connection behind
+	 * <code>connection</code>.
+	 */
+	static void closePhysical(final Connection connection) throws SQLException
+	{
+		final H2ConnectionProxy handler = getHandler(connection);
+		if(handler == null)
+		{
+			connection.close();
+			return;
+		}
+		
+		if(handler.statementCache != null)
+		{
+			handler.statementCache.clear();
+		}
+		handler.connection.close();
+	}
+	
+	
+	private static H2ConnectionProxy getHandler(final Connection connection)
+	{
+		if(connection != null && Proxy.isProxyClass(connection.getClass()))
+		{
+			final InvocationHandler handler = Proxy.getInvocationHandler(connection);
+			if(handler instanceof H2ConnectionProxy)
+			{
+				return (H2ConnectionProxy)handler;
+			}
+		}
+		return null;
+	}
+	
+	
+	@Override
+	public Object invoke(final Object proxy, final Method method, final Object[] args)
+			throws Throwable
+	{
+		switch(method.getName())
+		{
+			case "close":
+				// handed back to the pool by H2JDBCConnection.close()
+				return null;
+			
+			case "equals":
+				return proxy == args[0];
+			
+			case "hashCode":
+				return System.identityHashCode(proxy);
+			
+			case "prepareStatement":
+				if(this.statementCache != null)
+				{
+					final Class<?>[] types = method.getParameterTypes();
+					if(Arrays.equals(types,PREPARE))
+					{
+						return prepareStatement((String)args[0],Statement.NO_GENERATED_KEYS);
+					}
+					if(Arrays.equals(types,PREPARE_WITH_KEYS))
+					{
+						return prepareStatement((String)args[0],(Integer)args[1]);
+					}
+				}
+			break;
+		}
+		
+		return delegate(this.connection,method,args);
+	}
+	
+	
+	private PreparedStatement prepareStatement(final String sql, final int autoGeneratedKeys)
+			throws SQLException
+	{
+		final PreparedStatement statement = this.statementCache.checkOut(sql,autoGeneratedKeys);
+		return (PreparedStatement)Proxy.newProxyInstance(
+				PreparedStatement.class.getClassLoader(),new Class<?>[]{PreparedStatement.class},
+				new CachedStatementHandler(sql,autoGeneratedKeys,statement));
+	}
+	
+	
+	private static Object delegate(final Object target, final Method method, final Object[] args)
+			throws Throwable
+	{
+		try
+		{
+			return method.invoke(target,args);
+		}
+		catch(final InvocationTargetException e)
+		{
+			throw e.getCause();
+		}
+	}
+	
+	
+	
+	/**
+	 * A checked out statement of the cache, closing it hands it back.
+	 */
+	private final class CachedStatementHandler implements InvocationHandler
+	{
+		private final String			sql;
+		private final int				autoGeneratedKeys;
+		private final PreparedStatement	statement;
+		private boolean					closed;
+		
+		
+		CachedStatementHandler(final String sql, final int autoGeneratedKeys,
+				final PreparedStatement statement)
+		{
+			this.sql = sql;
+			this.autoGeneratedKeys = autoGeneratedKeys;
+			this.statement = statement;
+		}
+		
+		
+		@Override
+		public Object invoke(final Object proxy, final Method method, final Object[] args)
+				throws Throwable
+		{
+			switch(method.getName())
+			{
+				case "close":
+					if(!this.closed)
+					{
+						this.closed = true;
+						H2ConnectionProxy.this.statementCache.checkIn(this.sql,
+								this.autoGeneratedKeys,this.statement);
+					}
+					return null;
+				
+				case "isClosed":
+					return this.closed || this.statement.isClosed();
+				
+				case "getConnection":
+					return H2ConnectionProxy.this.proxy;
+				
+				case "equals":
+					return proxy == args[0];
+				
+				case "hashCode":
+					return System.identityHashCode(proxy);
+			}
+			
+			if(this.closed)
+			{
+				throw new SQLException("Statement is closed");
+			}
+			return delegate(this.statement,method,args);
+		}
+	}
+}
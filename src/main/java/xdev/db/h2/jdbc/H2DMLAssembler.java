@@ -27,16 +27,111 @@ import com.xdev.jadoth.sqlengine.dbms.standard.StandardDMLAssembler;
 
 public class H2DMLAssembler extends StandardDMLAssembler<H2Dbms>
 {
+	/**
+	 * The upper bound of {@link #selectLengthHint}, so a single huge query
+	 * doesn't make every following builder huge.
+	 */
+	private static final int	MAX_SELECT_LENGTH_HINT	= 4096;
+	
+	/**
+	 * The length of the longest <code>SELECT</code> assembled so far, used to
+	 * presize the target builder. Races between threads only lose an update.
+	 */
+	private int					selectLengthHint		= 64;
+	
+	
 	public H2DMLAssembler(final H2Dbms dbms)
 	{
 		super(dbms);
 	}
 	
 	
+	/**
+	 * Assembles the condition of a follow-up page of a keyset (seek)
+	 * pagination: the page starts after the last key of the previous page
+	 * instead of skipping the rows of the previous pages with
+	 * <code>OFFSET</code>. For the key columns <code>K1, K2</code> in
+	 * ascending order the condition is
+	 * 
+	 * <pre>
+	 * "K1" &gt;= ?1 AND ("K1", "K2") &gt; (?1, ?2)
+	 * </pre>
+	 * 
+	 * H2 reads an index on the key columns from its start for the row value
+	 * comparison alone, the range condition on the first key column lets it
+	 * seek to the previous key. The numbered parameters bind both to the key
+	 * values of the last row, in the order of the key columns.
+	 * <p>
+	 * All key columns are sorted in the same direction, the row value
+	 * comparison can't express mixed directions.
+	 * 
+	 * @param keyColumns
+	 *            the names of the key columns, which identify a row uniquely
+	 * @param descending
+	 *            <code>true</code> if the key columns are sorted in
+	 *            descending order
+	 * @return the condition
+	 * @see #assembleKeysetOrder(String[], boolean)
+	 */
+	public static String assembleKeysetCondition(final String[] keyColumns,
+			final boolean descending)
+	{
+		final String operator = descending ? " < " : " > ";
+		final StringBuilder sb = new StringBuilder(32 * keyColumns.length);
+		H2Dbms.appendIdentifier(keyColumns[0],sb);
+		if(keyColumns.length == 1)
+		{
+			return sb.append(operator).append("?1").toString();
+		}
+		
+		sb.append(descending ? " <= ?1 AND (" : " >= ?1 AND (");
+		for(int i = 0; i < keyColumns.length; i++)
+		{
+			if(i > 0)
+			{
+				sb.append(", ");
+			}
+			H2Dbms.appendIdentifier(keyColumns[i],sb);
+		}
+		sb.append(')').append(operator).append('(');
+		for(int i = 0; i < keyColumns.length; i++)
+		{
+			sb.append(i > 0 ? ", ?" : "?").append(i + 1);
+		}
+		return sb.append(')').toString();
+	}
+	
+	
+	/**
+	 * @param keyColumns
+	 *            the names of the key columns
+	 * @param descending
+	 *            <code>true</code> if the key columns are sorted in
+	 *            descending order
+	 * @return the <code>ORDER BY</code> items of a keyset pagination
+	 * @see #assembleKeysetCondition(String[], boolean)
+	 */
+	public static String[] assembleKeysetOrder(final String[] keyColumns,
+			final boolean descending)
+	{
+		final String[] order = new String[keyColumns.length];
+		for(int i = 0; i < keyColumns.length; i++)
+		{
+			final StringBuilder sb = H2Dbms.appendIdentifier(keyColumns[i],new StringBuilder());
+			order[i] = descending ? sb.append(" DESC").toString() : sb.toString();
+		}
+		return order;
+	}
+	
+	
 	// /////////////////////////////////////////////////////////////////////////
 	// override methods //
 	// ///////////////////
 	/**
+	 * Presizes <code>sb</code> to the length of the longest
+	 * <code>SELECT</code> assembled before, so a fresh builder doesn't grow
+	 * step by step while the query is appended.
+	 * 
 	 * @param query
 	 * @param sb
 	 * @param indentLevel
@@ -53,6 +148,9 @@ public class H2DMLAssembler extends StandardDMLAssembler<H2Dbms>
 			final int indentLevel, final int flags, final String clauseSeperator,
 			final String newLine)
 	{
+		final int start = sb.length();
+		sb.ensureCapacity(start + this.selectLengthHint);
+		
 		indent(sb,indentLevel,isSingleLine(flags)).append(query.keyword());
 		this.assembleSelectDISTINCT(query,sb,indentLevel,flags);
 		this.assembleSelectItems(query,sb,flags,indentLevel,newLine);
@@ -60,6 +158,12 @@ public class H2DMLAssembler extends StandardDMLAssembler<H2Dbms>
 				newLine);
 		this.assembleAppendSELECTs(query,sb,indentLevel,flags,clauseSeperator,newLine);
 		this.assembleSelectRowLimit(query,sb,flags,clauseSeperator,newLine,indentLevel);
+		
+		final int length = sb.length() - start;
+		if(length > this.selectLengthHint)
+		{
+			this.selectLengthHint = Math.min(length,MAX_SELECT_LENGTH_HINT);
+		}
 		return sb;
 	}
 	
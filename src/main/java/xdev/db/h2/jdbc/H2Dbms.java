@@ -18,11 +18,16 @@
 package xdev.db.h2.jdbc;
 
 
+import java.util.Map;
+
 import com.xdev.jadoth.sqlengine.dbms.DbmsAdaptor;
 import com.xdev.jadoth.sqlengine.dbms.SQLExceptionParser;
 import com.xdev.jadoth.sqlengine.internal.DatabaseGateway;
 import com.xdev.jadoth.sqlengine.internal.tables.SqlTableIdentity;
 
+import xdev.db.DBException;
+import xdev.db.jdbc.JDBCConnection;
+
 
 public class H2Dbms
 		extends
@@ -51,7 +56,7 @@ public class H2Dbms
 	 */
 	public H2Dbms()
 	{
-		this(new SQLExceptionParser.Body());
+		this(new H2ExceptionParser());
 	}
 	
 	
@@ -98,17 +103,58 @@ public class H2Dbms
 	
 	
 	/**
-	 * HSQL does not support any means of calculating table columns selectivity
-	 * as far as it is known.
+	 * Refreshes the optimizer statistics of a table with
+	 * <code>ANALYZE TABLE</code>, sampling as many rows as the data source's
+	 * {@link H2JDBCDataSource#ANALYZE_SAMPLE_SIZE} says.
 	 * 
 	 * @param table
 	 *            the table
-	 * @return the object
+	 * @return the selectivity per column, see
+	 *         {@link #updateSelectivity(String, String, int)}
 	 */
 	@Override
 	public Object updateSelectivity(final SqlTableIdentity table)
 	{
-		return null;
+		return updateSelectivity(table.sql().schema,table.sql().name,
+				this.getDataSource().getAnalyzeSampleSize());
+	}
+	
+	
+	/**
+	 * Refreshes the optimizer statistics of a table with
+	 * <code>ANALYZE TABLE</code>.
+	 * 
+	 * @param schema
+	 *            the schema of the table, <code>null</code> for the current
+	 *            one
+	 * @param tableName
+	 *            the table
+	 * @param sampleSize
+	 *            the number of rows to sample, <code>0</code> for all rows
+	 * @return the selectivity per column name, in column order, from 0 (all
+	 *         values equal) to 100 (all values distinct)
+	 */
+	public Map<String, Integer> updateSelectivity(final String schema, final String tableName,
+			final int sampleSize)
+	{
+		try
+		{
+			final JDBCConnection jdbcConnection = (JDBCConnection)this.getDataSource()
+					.openConnection();
+			try
+			{
+				return H2Maintenance.updateSelectivity(jdbcConnection,schema,tableName,
+						sampleSize);
+			}
+			finally
+			{
+				jdbcConnection.close();
+			}
+		}
+		catch(final DBException e)
+		{
+			throw new RuntimeException(e);
+		}
 	}
 	
 	
@@ -133,7 +179,7 @@ public class H2Dbms
 	@Override
 	public H2RetrospectionAccessor getRetrospectionAccessor()
 	{
-		throw new RuntimeException("HSQL Retrospection not implemented yet!");
+		return super.getRetrospectionAccessor();
 	}
 	
 	
@@ -149,14 +195,81 @@ public class H2Dbms
 	
 	
 	/**
+	 * Recreates the secondary indices of a table and writes a checkpoint
+	 * afterwards, so it can be scheduled as maintenance against index
+	 * fragmentation.
+	 * 
 	 * @param fullQualifiedTableName
-	 * @return
+	 *            the table, optionally qualified with its schema
+	 * @return the {@link H2IndexRebuildReport}
 	 * @see com.xdev.jadoth.sqlengine.dbms.DbmsAdaptor#rebuildAllIndices(java.lang.String)
 	 */
 	@Override
 	public Object rebuildAllIndices(final String fullQualifiedTableName)
 	{
-		return null;
+		final String[] name = splitQualifiedName(fullQualifiedTableName);
+		try
+		{
+			final JDBCConnection jdbcConnection = (JDBCConnection)this.getDataSource()
+					.openConnection();
+			try
+			{
+				final H2IndexRebuildReport report = H2Maintenance.rebuildIndices(jdbcConnection,
+						name[0],name[1]);
+				final H2MetaDataCache cache = this.getDataSource().getMetaDataCache();
+				if(cache != null)
+				{
+					cache.invalidate(name[1]);
+				}
+				this.getRetrospectionAccessor().clearCache();
+				return report;
+			}
+			finally
+			{
+				jdbcConnection.close();
+			}
+		}
+		catch(final DBException e)
+		{
+			throw new RuntimeException(e);
+		}
+	}
+	
+	
+	/**
+	 * Splits a possibly schema qualified and delimited name into schema and
+	 * name.
+	 * 
+	 * @return the schema, <code>null</code> if not qualified, and the name
+	 */
+	static String[] splitQualifiedName(final String qualifiedName)
+	{
+		boolean delimited = false;
+		for(int i = 0, len = qualifiedName.length(); i < len; i++)
+		{
+			final char ch = qualifiedName.charAt(i);
+			if(ch == IDENTIFIER_DELIMITER)
+			{
+				delimited = !delimited;
+			}
+			else if(ch == '.' && !delimited)
+			{
+				return new String[]{unquote(qualifiedName.substring(0,i)),
+						unquote(qualifiedName.substring(i + 1))};
+			}
+		}
+		return new String[]{null,unquote(qualifiedName)};
+	}
+	
+	
+	private static String unquote(final String name)
+	{
+		final String delimiter = String.valueOf(IDENTIFIER_DELIMITER);
+		if(name.length() > 1 && name.startsWith(delimiter) && name.endsWith(delimiter))
+		{
+			return name.substring(1,name.length() - 1).replace(delimiter + delimiter,delimiter);
+		}
+		return name;
 	}
 	
 	
@@ -183,4 +296,87 @@ public class H2Dbms
 	{
 		return IDENTIFIER_DELIMITER;
 	}
+	
+	
+	H2JDBCDataSource getDataSource()
+	{
+		if(this.dataSource == null)
+		{
+			throw new IllegalStateException("No data source assigned");
+		}
+		return this.dataSource;
+	}
+	
+	
+	/**
+	 * Appends a delimited identifier, optionally qualified with a schema.
+	 * 
+	 * @param schema
+	 *            the schema, may be <code>null</code>
+	 * @param name
+	 *            the name of the object
+	 * @param sb
+	 *            the target
+	 * @return the target
+	 */
+	public static StringBuilder appendIdentifier(final String schema, final String name,
+			final StringBuilder sb)
+	{
+		if(schema != null)
+		{
+			appendIdentifier(schema,sb);
+			sb.append('.');
+		}
+		return appendIdentifier(name,sb);
+	}
+	
+	
+	/**
+	 * Appends a delimited identifier, doubling contained delimiters.
+	 * 
+	 * @param name
+	 *            the identifier
+	 * @param sb
+	 *            the target
+	 * @return the target
+	 */
+	public static StringBuilder appendIdentifier(final String name, final StringBuilder sb)
+	{
+		sb.append(IDENTIFIER_DELIMITER);
+		for(int i = 0, len = name.length(); i < len; i++)
+		{
+			final char ch = name.charAt(i);
+			if(ch == IDENTIFIER_DELIMITER)
+			{
+				sb.append(IDENTIFIER_DELIMITER);
+			}
+			sb.append(ch);
+		}
+		return sb.append(IDENTIFIER_DELIMITER);
+	}
+	
+	
+	/**
+	 * Appends a string literal, doubling contained quotes.
+	 * 
+	 * @param value
+	 *            the string
+	 * @param sb
+	 *            the target
+	 * @return the target
+	 */
+	public static StringBuilder appendStringLiteral(final String value, final StringBuilder sb)
+	{
+		sb.append('\'');
+		for(int i = 0, len = value.length(); i < len; i++)
+		{
+			final char ch = value.charAt(i);
+			if(ch == '\'')
+			{
+				sb.append('\'');
+			}
+			sb.append(ch);
+		}
+		return sb.append('\'');
+	}
 }
@@ -19,18 +19,115 @@ package xdev.db.h2.jdbc;
 
 
 import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLTransactionRollbackException;
+
+import org.h2.api.ErrorCode;
 
 import com.xdev.jadoth.sqlengine.dbms.SQLExceptionParser;
 import com.xdev.jadoth.sqlengine.exceptions.SQLEngineException;
 
 
-
+/**
+ * Classifies H2's exceptions by their error code into
+ * {@link H2TransientException}s, {@link H2ConstraintException}s,
+ * {@link H2SyntaxException}s and {@link H2ConnectionLostException}s. All
+ * other exceptions are wrapped in a plain {@link SQLEngineException}.
+ */
 public class H2ExceptionParser implements SQLExceptionParser
 {
 	@Override
 	public SQLEngineException parseSQLException(SQLException e)
 	{
+		if(isTransient(e))
+		{
+			return new H2TransientException(e);
+		}
+		if(isConnectionLost(e))
+		{
+			return new H2ConnectionLostException(e);
+		}
+		
+		switch(e.getErrorCode())
+		{
+			case ErrorCode.DUPLICATE_KEY_1:
+			case ErrorCode.NULL_NOT_ALLOWED:
+			case ErrorCode.CHECK_CONSTRAINT_VIOLATED_1:
+			case ErrorCode.REFERENTIAL_INTEGRITY_VIOLATED_CHILD_EXISTS_1:
+			case ErrorCode.REFERENTIAL_INTEGRITY_VIOLATED_PARENT_MISSING_1:
+				return new H2ConstraintException(e);
+				
+			case ErrorCode.SYNTAX_ERROR_1:
+			case ErrorCode.SYNTAX_ERROR_2:
+			case ErrorCode.TABLE_OR_VIEW_NOT_FOUND_1:
+			case ErrorCode.COLUMN_NOT_FOUND_1:
+				return new H2SyntaxException(e);
+		}
+		
 		return new SQLEngineException(e);
 	}
 	
+	
+	/**
+	 * @param e
+	 *            the exception
+	 * @return <code>true</code> if the exception has been caused by
+	 *         concurrent access and the statement may succeed if it is
+	 *         executed again
+	 */
+	public static boolean isTransient(SQLException e)
+	{
+		switch(e.getErrorCode())
+		{
+			case ErrorCode.LOCK_TIMEOUT_1:
+			case ErrorCode.DEADLOCK_1:
+			case ErrorCode.CONCURRENT_UPDATE_1:
+			case ErrorCode.DATABASE_IS_IN_EXCLUSIVE_MODE:
+				return true;
+		}
+		return e instanceof SQLTransactionRollbackException;
+	}
+	
+	
+	/**
+	 * @param e
+	 *            the exception
+	 * @return <code>true</code> if the connection or the database isn't
+	 *         usable anymore
+	 */
+	public static boolean isConnectionLost(SQLException e)
+	{
+		switch(e.getErrorCode())
+		{
+			case ErrorCode.CONNECTION_BROKEN_1:
+			case ErrorCode.DATABASE_IS_CLOSED:
+			case ErrorCode.DATABASE_CALLED_AT_SHUTDOWN:
+			case ErrorCode.OBJECT_CLOSED:
+				return true;
+		}
+		return e instanceof SQLNonTransientConnectionException;
+	}
+	
+	
+	/**
+	 * @param t
+	 *            an exception
+	 * @return the first {@link SQLException} in the cause chain of
+	 *         <code>t</code>, or <code>null</code>
+	 */
+	public static SQLException findSQLException(Throwable t)
+	{
+		for(; t != null; t = t.getCause())
+		{
+			if(t instanceof SQLException)
+			{
+				return (SQLException)t;
+			}
+			if(t.getCause() == t)
+			{
+				break;
+			}
+		}
+		return null;
+	}
 }
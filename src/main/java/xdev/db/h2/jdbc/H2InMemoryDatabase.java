@@ -0,0 +1,285 @@
+/*
+ * SqlEngine Database Adapter H2 - XAPI SqlEngine Database Adapter for H2
+ * Copyright © 2003 XDEV Software (https://xdev.software)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package xdev.db.h2.jdbc;
+
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * An in-memory H2 database which is loaded from a SQL script when it is
+ * opened and written back to that script periodically and when it is closed.
+ * <p>
+ * The database is kept open by a connection held by this object, which is
+ * also used to write the snapshots. A snapshot is written to a temporary
+ * file first and then moved over the script, so an interrupted snapshot
+ * doesn't destroy the previous one. Snapshots have their own lock, so
+ * {@link #open()} isn't blocked while a snapshot is written. A failed
+ * periodic snapshot is logged and kept, see {@link #getLastSnapshotFailure()}.
+ */
+public class H2InMemoryDatabase
+{
+	private final String				url;
+	private final String				user;
+	private final String				password;
+	private final File					scriptFile;
+	private final long					snapshotInterval;
+	private final Object				snapshotLock	= new Object();
+	
+	private volatile boolean			opened;
+	private Connection					connection;
+	private ScheduledExecutorService	scheduler;
+	private volatile long				lastSnapshot;
+	private volatile long				snapshotDuration;
+	private volatile Exception			lastSnapshotFailure;
+	
+	
+	/**
+	 * @param url
+	 *            the <code>jdbc:h2:mem:</code> url of the database
+	 * @param user
+	 *            the user
+	 * @param password
+	 *            the password
+	 * @param scriptFile
+	 *            the script to load and snapshot to, <code>null</code> for a
+	 *            database without persistence
+	 * @param snapshotInterval
+	 *            the time between two snapshots in milliseconds,
+	 *            <code>0</code> to snapshot only on {@link #close()}
+	 */
+	public H2InMemoryDatabase(final String url, final String user, final String password,
+			final File scriptFile, final long snapshotInterval)
+	{
+		this.url = url;
+		this.user = user;
+		this.password = password;
+		this.scriptFile = scriptFile;
+		this.snapshotInterval = snapshotInterval;
+	}
+	
+	
+	/**
+	 * Creates the database, loads the script if it exists and schedules the
+	 * snapshots. Does nothing if the database is already open.
+	 * 
+	 * @throws SQLException
+	 *             if the database can't be created or the script fails
+	 */
+	public void open() throws SQLException
+	{
+		if(!this.opened)
+		{
+			openDatabase();
+		}
+	}
+	
+	
+	private synchronized void openDatabase() throws SQLException
+	{
+		if(this.connection != null)
+		{
+			return;
+		}
+		
+		final Connection connection = DriverManager.getConnection(this.url,this.user,
+				this.password);
+		try
+		{
+			if(this.scriptFile != null && this.scriptFile.isFile())
+			{
+				try(Statement statement = connection.createStatement())
+				{
+					statement.execute(H2Dbms.appendStringLiteral(this.scriptFile.getPath(),
+							new StringBuilder("RUNSCRIPT FROM ")).toString());
+				}
+			}
+		}
+		catch(final SQLException e)
+		{
+			connection.close();
+			throw e;
+		}
+		this.connection = connection;
+		this.opened = true;
+		
+		if(this.scriptFile != null && this.snapshotInterval > 0)
+		{
+			this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+				final Thread thread = new Thread(runnable,"H2 snapshot " + this.url);
+				thread.setDaemon(true);
+				return thread;
+			});
+			this.scheduler.scheduleWithFixedDelay(() -> {
+				try
+				{
+					snapshot();
+				}
+				catch(final SQLException | IOException e)
+				{
+					H2JDBCConnection.logWarning("Snapshot of " + this.url + " failed",e);
+				}
+			},this.snapshotInterval,this.snapshotInterval,TimeUnit.MILLISECONDS);
+		}
+	}
+	
+	
+	public boolean isOpen()
+	{
+		return this.opened;
+	}
+	
+	
+	/**
+	 * Writes the whole database to the script file with
+	 * <code>SCRIPT TO</code>.
+	 * 
+	 * @throws SQLException
+	 *             if the script can't be written
+	 * @throws IOException
+	 *             if the script can't be moved to its final location
+	 */
+	public void snapshot() throws SQLException, IOException
+	{
+		if(this.scriptFile == null)
+		{
+			return;
+		}
+		
+		synchronized(this.snapshotLock)
+		{
+			final Connection connection;
+			synchronized(this)
+			{
+				connection = this.connection;
+			}
+			if(connection == null)
+			{
+				return;
+			}
+			
+			final long start = System.currentTimeMillis();
+			final File tempFile = new File(this.scriptFile.getPath() + ".tmp");
+			try
+			{
+				try(Statement statement = connection.createStatement())
+				{
+					statement.execute(H2Dbms.appendStringLiteral(tempFile.getPath(),
+							new StringBuilder("SCRIPT TO ")).toString());
+				}
+				Files.move(tempFile.toPath(),this.scriptFile.toPath(),
+						StandardCopyOption.REPLACE_EXISTING,StandardCopyOption.ATOMIC_MOVE);
+			}
+			catch(final SQLException | IOException e)
+			{
+				this.lastSnapshotFailure = e;
+				throw e;
+			}
+			
+			this.lastSnapshot = System.currentTimeMillis();
+			this.snapshotDuration = this.lastSnapshot - start;
+			this.lastSnapshotFailure = null;
+		}
+	}
+	
+	
+	/**
+	 * @return the time of the last snapshot, <code>0</code> if none has been
+	 *         written yet
+	 */
+	public long getLastSnapshot()
+	{
+		return this.lastSnapshot;
+	}
+	
+	
+	/**
+	 * @return the failure of the last snapshot, <code>null</code> if it
+	 *         succeeded or none has been written yet
+	 */
+	public Exception getLastSnapshotFailure()
+	{
+		return this.lastSnapshotFailure;
+	}
+	
+	
+	/**
+	 * @return the duration of the last snapshot in milliseconds
+	 */
+	public long getSnapshotDuration()
+	{
+		return this.snapshotDuration;
+	}
+	
+	
+	/**
+	 * Stops the periodic snapshots, writes a final one and closes the
+	 * database. Pooled connections to the database have to be closed before,
+	 * see {@link H2JDBCDataSource#closeInMemoryDatabase()}.
+	 * 
+	 * @throws SQLException
+	 *             if the snapshot fails or the database can't be closed
+	 * @throws IOException
+	 *             if the script can't be moved to its final location
+	 */
+	public void close() throws SQLException, IOException
+	{
+		// same lock order as snapshot()
+		synchronized(this.snapshotLock)
+		{
+			synchronized(this)
+			{
+				if(this.connection == null)
+				{
+					return;
+				}
+				
+				if(this.scheduler != null)
+				{
+					this.scheduler.shutdown();
+					this.scheduler = null;
+				}
+				
+				try
+				{
+					snapshot();
+					try(Statement statement = this.connection.createStatement())
+					{
+						statement.execute("SHUTDOWN");
+					}
+				}
+				finally
+				{
+					this.opened = false;
+					this.connection.close();
+					this.connection = null;
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,212 @@
+/*
+ * SqlEngine Database Adapter H2 - XAPI SqlEngine Database Adapter for H2
+ * Copyright © 2003 XDEV Software (https://xdev.software)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package xdev.db.h2.jdbc;
+
+
+import java.util.Arrays;
+
+import xdev.db.Index;
+
+
+/**
+ * An index with H2's index method and the sort direction of its columns.
+ * Indices which aren't primary keys or plain unique constraints are created
+ * with <code>CREATE INDEX</code> after the table.
+ * <p>
+ * {@link #equals(Object)} and {@link #hashCode()} are those of
+ * {@link Index}, so H2 indices and plain indices compare symmetrically. The
+ * schema synchronization of {@link H2JDBCMetaData} compares indices with
+ * {@link #equalsIndex(Index, Index)} instead, which takes the column order,
+ * the sort direction and the kind into account.
+ */
+public class H2Index extends Index
+{
+	/**
+	 * The data structure of an index.
+	 */
+	public static enum Kind
+	{
+		/**
+		 * A B-tree index, supports range queries and sorting.
+		 */
+		DEFAULT(""),
+		
+		/**
+		 * A hash index, for equality lookups only.
+		 */
+		HASH("HASH "),
+		
+		/**
+		 * An R-tree index on a single <code>GEOMETRY</code> column.
+		 */
+		SPATIAL("SPATIAL ");
+		
+		private final String	keyword;
+		
+		
+		private Kind(final String keyword)
+		{
+			this.keyword = keyword;
+		}
+		
+		
+		/**
+		 * @return the keyword in <code>CREATE ... INDEX</code> including a
+		 *         trailing blank, empty for the default
+		 */
+		public String getKeyword()
+		{
+			return this.keyword;
+		}
+		
+		
+		/**
+		 * @param indexTypeName
+		 *            the <code>INDEX_TYPE_NAME</code> of
+		 *            <code>INFORMATION_SCHEMA.INDEXES</code>
+		 * @return the kind of the index
+		 */
+		public static Kind forIndexTypeName(final String indexTypeName)
+		{
+			if(indexTypeName != null)
+			{
+				if(indexTypeName.startsWith("SPATIAL"))
+				{
+					return SPATIAL;
+				}
+				if(indexTypeName.contains("HASH"))
+				{
+					return HASH;
+				}
+			}
+			return DEFAULT;
+		}
+	}
+	
+	private final Kind		kind;
+	private final boolean[]	descending;
+	
+	
+	public H2Index(final String name, final IndexType type, final Kind kind,
+			final String... columns)
+	{
+		this(name,type,kind,columns,new boolean[columns.length]);
+	}
+	
+	
+	/**
+	 * @param descending
+	 *            the sort direction per column, <code>true</code> for
+	 *            descending
+	 */
+	public H2Index(final String name, final IndexType type, final Kind kind,
+			final String[] columns, final boolean[] descending)
+	{
+		super(name,type,columns);
+		
+		this.kind = kind;
+		this.descending = descending.clone();
+	}
+	
+	
+	public Kind getKind()
+	{
+		return this.kind;
+	}
+	
+	
+	/**
+	 * @return <code>true</code> if the column at <code>index</code> is sorted
+	 *         descending
+	 */
+	public boolean isDescending(final int index)
+	{
+		return index < this.descending.length && this.descending[index];
+	}
+	
+	
+	/**
+	 * @return <code>true</code> if any column is sorted descending
+	 */
+	public boolean hasDescendingColumns()
+	{
+		for(final boolean desc : this.descending)
+		{
+			if(desc)
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	
+	/**
+	 * Compares two indices by their definition, regardless of their names
+	 * and classes: they are equal if they have the same type and kind and
+	 * the same columns in the same order and direction.
+	 * 
+	 * @return <code>true</code> if both indices create the same index
+	 */
+	public static boolean equalsIndex(final Index index1, final Index index2)
+	{
+		if(index1 == index2)
+		{
+			return true;
+		}
+		if(index1 == null || index2 == null)
+		{
+			return false;
+		}
+		
+		if(index1.getType() != index2.getType() || getKind(index1) != getKind(index2)
+				|| !Arrays.equals(index1.getColumns(),index2.getColumns()))
+		{
+			return false;
+		}
+		for(int i = 0; i < index1.getColumns().length; i++)
+		{
+			if(isDescending(index1,i) != isDescending(index2,i))
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	
+	/**
+	 * @return <code>true</code> if the column at <code>column</code> of the
+	 *         index is sorted descending, always <code>false</code> for
+	 *         indices which aren't {@link H2Index}es
+	 */
+	public static boolean isDescending(final Index index, final int column)
+	{
+		return index instanceof H2Index && ((H2Index)index).isDescending(column);
+	}
+	
+	
+	/**
+	 * @return the kind of an index, {@link Kind#DEFAULT} for indices which
+	 *         aren't {@link H2Index}es
+	 */
+	public static Kind getKind(final Index index)
+	{
+		return index instanceof H2Index ? ((H2Index)index).kind : Kind.DEFAULT;
+	}
+}
@@ -0,0 +1,100 @@
+/*
+ * SqlEngine Database Adapter H2 - XAPI SqlEngine Database Adapter for H2
+ * Copyright © 2003 XDEV Software (https://xdev.software)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package xdev.db.h2.jdbc;
+
+
+/**
+ * Result of {@link H2Dbms#rebuildAllIndices(String)}.
+ */
+public class H2IndexRebuildReport
+{
+	/**
+	 * Value of the file sizes if the database isn't stored in a file.
+	 */
+	public static final long	UNKNOWN_FILE_SIZE	= -1;
+	
+	private final String		tableName;
+	private final String[]		indices;
+	private final long			fileSizeBefore;
+	private final long			fileSizeAfter;
+	private final long			duration;
+	
+	
+	public H2IndexRebuildReport(final String tableName, final String[] indices,
+			final long fileSizeBefore, final long fileSizeAfter, final long duration)
+	{
+		this.tableName = tableName;
+		this.indices = indices;
+		this.fileSizeBefore = fileSizeBefore;
+		this.fileSizeAfter = fileSizeAfter;
+		this.duration = duration;
+	}
+	
+	
+	public String getTableName()
+	{
+		return this.tableName;
+	}
+	
+	
+	/**
+	 * @return the names of the rebuilt indices
+	 */
+	public String[] getIndices()
+	{
+		return this.indices.clone();
+	}
+	
+	
+	/**
+	 * @return the size of the database file in bytes before the rebuild, or
+	 *         {@link #UNKNOWN_FILE_SIZE}
+	 */
+	public long getFileSizeBefore()
+	{
+		return this.fileSizeBefore;
+	}
+	
+	
+	/**
+	 * @return the size of the database file in bytes after the rebuild and
+	 *         compaction, or {@link #UNKNOWN_FILE_SIZE}
+	 */
+	public long getFileSizeAfter()
+	{
+		return this.fileSizeAfter;
+	}
+	
+	
+	/**
+	 * @return the duration of the rebuild in milliseconds
+	 */
+	public long getDuration()
+	{
+		return this.duration;
+	}
+	
+	
+	@Override
+	public String toString()
+	{
+		return "Rebuilt " + this.indices.length + " indices of " + this.tableName + " in "
+				+ this.duration + " ms, file size " + this.fileSizeBefore + " -> "
+				+ this.fileSizeAfter + " bytes";
+	}
+}
@@ -19,17 +19,765 @@ package xdev.db.h2.jdbc;
 
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.stream.Stream;
 
+import xdev.db.DBException;
+import xdev.db.Result;
+import xdev.db.WriteResult;
 import xdev.db.jdbc.JDBCConnection;
+import xdev.db.sql.SELECT;
+import xdev.db.sql.Table;
 
 
 public class H2JDBCConnection extends JDBCConnection<H2JDBCDataSource, H2Dbms>
 {
+	private static final String		SELECT_SETTINGS	= "SELECT SETTING_NAME, SETTING_VALUE " //$NON-NLS-1$
+															+ "FROM INFORMATION_SCHEMA.SETTINGS " //$NON-NLS-1$
+															+ "WHERE SETTING_NAME IN ('CACHE_SIZE', 'COMPRESS', " //$NON-NLS-1$
+															+ "'WRITE_DELAY', 'MAX_COMPACT_TIME')"; //$NON-NLS-1$
+	
+	private final H2JDBCDataSource	h2DataSource;
+	private H2ConnectionPool		pool;
+	private Connection				pooledConnection;
+	
+	
 	public H2JDBCConnection(H2JDBCDataSource dataSource)
 	{
 		super(dataSource);
+		
+		this.h2DataSource = dataSource;
+	}
+	
+	
+	/**
+	 * Returns a prepared statement for the SQL text. If the data source's
+	 * {@link H2JDBCDataSource#STATEMENT_CACHE_SIZE} is set and the
+	 * connection is pooled, the statement is taken from or added to the
+	 * statement cache of the physical connection, so H2 doesn't have to parse
+	 * the same SQL again. The inherited query and write methods use the cache
+	 * the same way.
+	 * <p>
+	 * The statement has to be handed back with
+	 * {@link #releasePreparedStatement(PreparedStatement)}. Without pooling
+	 * there is no statement cache: every statement is prepared on a new
+	 * connection, which is closed together with the statement.
+	 * 
+	 * @param sql
+	 *            the SQL text
+	 * @return the prepared statement
+	 * @throws DBException
+	 *             if the statement can't be prepared
+	 */
+	public PreparedStatement getPreparedStatement(String sql) throws DBException
+	{
+		Connection connection = getConnection();
+		try
+		{
+			return connection.prepareStatement(sql);
+		}
+		catch(SQLException e)
+		{
+			releaseConnection(this,connection);
+			throw new DBException(this.h2DataSource,e);
+		}
+	}
+	
+	
+	/**
+	 * Hands back a statement returned by {@link #getPreparedStatement(String)}.
+	 * Cached statements stay open, all others are closed. Without pooling,
+	 * the connection of the statement is closed as well.
+	 * 
+	 * @param statement
+	 *            the statement
+	 */
+	public void releasePreparedStatement(PreparedStatement statement)
+	{
+		Connection connection = null;
+		try
+		{
+			if(this.pooledConnection == null)
+			{
+				connection = statement.getConnection();
+			}
+			statement.close();
+		}
+		catch(SQLException e)
+		{
+			e.printStackTrace();
+		}
+		finally
+		{
+			if(connection != null)
+			{
+				releaseConnection(this,connection);
+			}
+		}
+	}
+	
+	
+	/**
+	 * @return the statement cache of the pooled physical connection with its
+	 *         hit, miss and eviction counters, or <code>null</code> if it is
+	 *         disabled or the connection isn't pooled
+	 * @throws DBException
+	 *             if the underlying connection can't be obtained
+	 */
+	public H2StatementCache getStatementCache() throws DBException
+	{
+		if(this.h2DataSource.getStatementCacheSize() <= 0)
+		{
+			return null;
+		}
+		
+		return H2ConnectionProxy.getStatementCache(getConnection());
+	}
+	
+	
+	/**
+	 * Borrows a connection from the data source's connection pool on first
+	 * use if pooling is enabled, it is handed back on {@link #close()}. An
+	 * in-memory database is loaded and a managed server is started before the
+	 * first connection to it, unless the server has been stopped explicitly.
+	 */
+	@Override
+	public Connection getConnection() throws DBException
+	{
+		if(this.pooledConnection != null)
+		{
+			return this.pooledConnection;
+		}
+		
+		this.h2DataSource.startServerIfNotStopped();
+		
+		H2InMemoryDatabase inMemoryDatabase = this.h2DataSource.getInMemoryDatabase();
+		if(inMemoryDatabase != null)
+		{
+			try
+			{
+				inMemoryDatabase.open();
+			}
+			catch(SQLException e)
+			{
+				throw new DBException(this.h2DataSource,e);
+			}
+		}
+		
+		H2ConnectionPool pool = this.h2DataSource.getConnectionPool();
+		if(pool == null)
+		{
+			return logSettings(super.getConnection());
+		}
+		
+		try
+		{
+			this.pooledConnection = pool.borrow();
+			this.pool = pool;
+			return logSettings(this.pooledConnection);
+		}
+		catch(SQLException e)
+		{
+			throw new DBException(this.h2DataSource,e);
+		}
+	}
+	
+	
+	/**
+	 * Logs the database settings in effect once per data source, as reported
+	 * by the database.
+	 */
+	private Connection logSettings(Connection connection)
+	{
+		if(!this.h2DataSource.markSettingsLogged())
+		{
+			return connection;
+		}
+		
+		StringBuilder sb = new StringBuilder("H2 database settings:"); //$NON-NLS-1$
+		try(Statement statement = connection.createStatement())
+		{
+			try(ResultSet resultSet = statement.executeQuery(SELECT_SETTINGS))
+			{
+				while(resultSet.next())
+				{
+					sb.append(' ').append(resultSet.getString(1)).append('=')
+							.append(resultSet.getString(2));
+				}
+			}
+			try(ResultSet resultSet = statement.executeQuery("SELECT LOCK_TIMEOUT()")) //$NON-NLS-1$
+			{
+				if(resultSet.next())
+				{
+					sb.append(" LOCK_TIMEOUT=").append(resultSet.getInt(1)); //$NON-NLS-1$
+				}
+			}
+			log.info(sb.toString());
+		}
+		catch(SQLException e)
+		{
+			e.printStackTrace();
+		}
+		return connection;
+	}
+	
+	
+	/**
+	 * Closes a connection obtained from {@link #getConnection()} of
+	 * <code>jdbcConnection</code>, unless it is the pooled connection, which
+	 * is kept until the {@link H2JDBCConnection} is closed.
+	 */
+	static void releaseConnection(JDBCConnection jdbcConnection, Connection connection)
+	{
+		if(jdbcConnection instanceof H2JDBCConnection
+				&& ((H2JDBCConnection)jdbcConnection).pooledConnection == connection)
+		{
+			return;
+		}
+		
+		try
+		{
+			connection.close();
+		}
+		catch(SQLException e)
+		{
+			e.printStackTrace();
+		}
+	}
+	
+	
+	/**
+	 * Logs a failure which doesn't fail the running operation, e.g. of a
+	 * background task, with the logger of the JDBC connections.
+	 */
+	static void logWarning(String message, Throwable cause)
+	{
+		log.warn(message,cause);
+	}
+	
+	
+	@Override
+	public void close() throws DBException
+	{
+		if(this.pooledConnection != null)
+		{
+			this.pool.release(this.pooledConnection);
+			this.pooledConnection = null;
+			this.pool = null;
+		}
+		
+		super.close();
+	}
+	
+	
+	/**
+	 * Inserts rows into a table with JDBC batches of
+	 * {@link H2JDBCDataSource#BULK_BATCH_SIZE} rows.
+	 * <p>
+	 * In auto-commit mode, auto-commit is switched off during the insert and
+	 * restored afterwards, the rows are committed every
+	 * {@link H2JDBCDataSource#BULK_COMMIT_INTERVAL} rows and, if a batch
+	 * fails, the rows since the last commit are rolled back. Within a
+	 * transaction of the caller, nothing is committed or rolled back; that's
+	 * left to the caller.
+	 * 
+	 * @param tableName
+	 *            the table
+	 * @param columns
+	 *            the columns to insert into
+	 * @param rows
+	 *            the rows, each with at least one value per column
+	 * @return the number of inserted rows and the throughput
+	 * @throws DBException
+	 *             if the insert fails or a row has less values than columns
+	 */
+	public H2BulkInsertResult bulkInsert(String tableName, String[] columns, Iterator<Object[]> rows)
+			throws DBException
+	{
+		int batchSize = Math.max(this.h2DataSource.getBulkBatchSize(),1);
+		int commitInterval = Math.max(this.h2DataSource.getBulkCommitInterval(),0);
+		
+		StringBuilder sb = new StringBuilder("INSERT INTO ");
+		H2Dbms.appendIdentifier(tableName,sb);
+		sb.append(" (");
+		for(int i = 0; i < columns.length; i++)
+		{
+			if(i > 0)
+			{
+				sb.append(", ");
+			}
+			H2Dbms.appendIdentifier(columns[i],sb);
+		}
+		sb.append(") VALUES (");
+		for(int i = 0; i < columns.length; i++)
+		{
+			sb.append(i > 0 ? ", ?" : "?");
+		}
+		sb.append(')');
+		
+		long start = System.currentTimeMillis();
+		long rowCount = 0;
+		int batchCount = 0;
+		int commitCount = 0;
+		
+		Connection connection = getConnection();
+		try
+		{
+			// only a transaction started here is committed or rolled back here
+			boolean manageTransaction = connection.getAutoCommit();
+			if(manageTransaction)
+			{
+				connection.setAutoCommit(false);
+			}
+			try(PreparedStatement statement = connection.prepareStatement(sb.toString()))
+			{
+				int pending = 0;
+				long uncommitted = 0;
+				while(rows.hasNext())
+				{
+					Object[] row = rows.next();
+					if(row == null || row.length < columns.length)
+					{
+						throw new DBException(this.h2DataSource,"Row " + (rowCount + 1) + " has "
+								+ (row == null ? 0 : row.length) + " values, expected "
+								+ columns.length + ".");
+					}
+					for(int i = 0; i < columns.length; i++)
+					{
+						statement.setObject(i + 1,row[i]);
+					}
+					statement.addBatch();
+					rowCount++;
+					uncommitted++;
+					
+					if(++pending == batchSize)
+					{
+						statement.executeBatch();
+						batchCount++;
+						pending = 0;
+					}
+					if(manageTransaction && commitInterval > 0 && uncommitted >= commitInterval)
+					{
+						if(pending > 0)
+						{
+							statement.executeBatch();
+							batchCount++;
+							pending = 0;
+						}
+						connection.commit();
+						commitCount++;
+						uncommitted = 0;
+					}
+				}
+				if(pending > 0)
+				{
+					statement.executeBatch();
+					batchCount++;
+				}
+				if(manageTransaction && uncommitted > 0)
+				{
+					connection.commit();
+					commitCount++;
+				}
+			}
+			catch(SQLException | DBException e)
+			{
+				if(manageTransaction)
+				{
+					connection.rollback();
+				}
+				throw e;
+			}
+			finally
+			{
+				if(manageTransaction)
+				{
+					connection.setAutoCommit(true);
+				}
+			}
+		}
+		catch(SQLException e)
+		{
+			throw new DBException(this.h2DataSource,e);
+		}
+		finally
+		{
+			releaseConnection(this,connection);
+		}
+		
+		H2BulkInsertResult result = new H2BulkInsertResult(tableName,rowCount,batchCount,
+				commitCount,System.currentTimeMillis() - start);
+		if(log.isDebugEnabled())
+		{
+			log.debug("Bulk insert: " + result); //$NON-NLS-1$
+		}
+		return result;
+	}
+	
+	
+	/**
+	 * Inserts the rows of a stream, see
+	 * {@link #bulkInsert(String, String[], Iterator)}. The stream is closed
+	 * afterwards.
+	 */
+	public H2BulkInsertResult bulkInsert(String tableName, String[] columns, Stream<Object[]> rows)
+			throws DBException
+	{
+		try(Stream<Object[]> stream = rows)
+		{
+			return bulkInsert(tableName,columns,stream.iterator());
+		}
+	}
+	
+	
+	/**
+	 * Retries writes which failed with a transient error, see
+	 * {@link H2JDBCDataSource#getRetryPolicy()}. Only writes in auto-commit
+	 * mode are retried: H2 rolls back the whole transaction on a deadlock, so
+	 * within an explicit transaction the caller has to repeat it.
+	 * <p>
+	 * The auto-commit mode is read from the pooled connection the write ran
+	 * on. Without pooling, the connection of the write isn't accessible here,
+	 * so failed writes aren't retried.
+	 */
+	@Override
+	public WriteResult write(String sql, boolean returnGeneratedKeys, Object... params)
+			throws DBException
+	{
+		H2RetryPolicy retryPolicy = this.h2DataSource.getRetryPolicy();
+		for(int retry = 0;; retry++)
+		{
+			try
+			{
+				return super.write(sql,returnGeneratedKeys,params);
+			}
+			catch(DBException e)
+			{
+				if(!retryPolicy.shouldRetry(e,retry) || !isAutoCommit()
+						|| !retryPolicy.awaitRetry(retry))
+				{
+					throw e;
+				}
+				if(log.isDebugEnabled())
+				{
+					log.debug("Retrying write after transient failure: " + e.getMessage()); //$NON-NLS-1$
+				}
+			}
+		}
+	}
+	
+	
+	/**
+	 * @return <code>true</code> if the pooled connection, which has run the
+	 *         last write, is in auto-commit mode
+	 */
+	private boolean isAutoCommit()
+	{
+		if(this.pooledConnection == null)
+		{
+			return false;
+		}
+		
+		try
+		{
+			return this.pooledConnection.getAutoCommit();
+		}
+		catch(SQLException e)
+		{
+			return false;
+		}
+	}
+	
+	
+	/**
+	 * Runs a query whose rows are read lazily with a forward-only, read-only
+	 * cursor and the data source's {@link H2JDBCDataSource#FETCH_SIZE}, so
+	 * large results don't have to fit into memory.
+	 * 
+	 * @param sql
+	 *            the query
+	 * @param params
+	 *            the query parameters
+	 * @return the iterator over the rows, which has to be closed if it isn't
+	 *         read to the end
+	 * @throws DBException
+	 *             if the query fails
+	 * @see #stream(String, Object...)
+	 */
+	public H2ResultIterator queryLazy(String sql, Object... params) throws DBException
+	{
+		return queryLazy(sql,this.h2DataSource.getFetchSize(),params);
+	}
+	
+	
+	/**
+	 * Runs a query whose rows are read lazily, see
+	 * {@link #queryLazy(String, Object...)}.
+	 * 
+	 * @param sql
+	 *            the query
+	 * @param fetchSize
+	 *            the number of rows read from the database at once
+	 * @param params
+	 *            the query parameters
+	 * @return the iterator over the rows
+	 * @throws DBException
+	 *             if the query fails
+	 */
+	public H2ResultIterator queryLazy(String sql, int fetchSize, Object... params)
+			throws DBException
+	{
+		Connection connection = getConnection();
+		PreparedStatement statement = null;
+		try
+		{
+			statement = connection.prepareStatement(sql,ResultSet.TYPE_FORWARD_ONLY,
+					ResultSet.CONCUR_READ_ONLY);
+			statement.setFetchSize(fetchSize);
+			for(int i = 0; i < params.length; i++)
+			{
+				statement.setObject(i + 1,params[i]);
+			}
+			return new H2ResultIterator(this.h2DataSource,this,connection,statement);
+		}
+		catch(SQLException e)
+		{
+			if(statement != null)
+			{
+				try
+				{
+					statement.close();
+				}
+				catch(SQLException e1)
+				{
+					e1.printStackTrace();
+				}
+			}
+			releaseConnection(this,connection);
+			throw new DBException(this.h2DataSource,e);
+		}
+	}
+	
+	
+	/**
+	 * Runs a query and returns its rows as a lazily read stream, see
+	 * {@link #queryLazy(String, Object...)}. The stream should be used in a
+	 * try-with-resources block; closing it releases the cursor.
+	 * 
+	 * @param sql
+	 *            the query
+	 * @param params
+	 *            the query parameters
+	 * @return the stream of rows
+	 * @throws DBException
+	 *             if the query fails
+	 */
+	public Stream<Object[]> queryStream(String sql, Object... params) throws DBException
+	{
+		return queryLazy(sql,params).stream();
+	}
+	
+	
+	/**
+	 * Creates one page of a keyset pagination: the rows of
+	 * <code>table</code> matching <code>condition</code>, ordered by the key
+	 * columns and limited to <code>pageSize</code> rows. A follow-up page
+	 * starts after the last key of the previous page, see
+	 * {@link H2DMLAssembler#assembleKeysetCondition(String[], boolean)}; its
+	 * parameters are the key values of the last row of the previous page.
+	 * 
+	 * @param table
+	 *            the table to read
+	 * @param condition
+	 *            the filter of the query, may be <code>null</code>
+	 * @param keyColumns
+	 *            the names of the key columns, which identify a row uniquely
+	 * @param descending
+	 *            <code>true</code> to sort all key columns in descending
+	 *            order
+	 * @param firstPage
+	 *            <code>true</code> for the first page, which has no previous
+	 *            key
+	 * @param pageSize
+	 *            the number of rows per page
+	 * @return the query of the page
+	 */
+	public SELECT createKeysetPage(Table table, String condition, String[] keyColumns,
+			boolean descending, boolean firstPage, int pageSize)
+	{
+		if(keyColumns.length == 0)
+		{
+			throw new IllegalArgumentException("No key columns");
+		}
+		
+		SELECT select = new SELECT().FROM(table);
+		if(firstPage)
+		{
+			if(condition != null)
+			{
+				select.WHERE(condition);
+			}
+		}
+		else
+		{
+			String keysetCondition = H2DMLAssembler.assembleKeysetCondition(keyColumns,
+					descending);
+			select.WHERE(condition != null ? "(" + condition + ") AND " + keysetCondition
+					: keysetCondition);
+		}
+		return select.ORDER_BY((Object[])H2DMLAssembler.assembleKeysetOrder(keyColumns,
+				descending)).FETCH_FIRST_ROWS_ONLY(pageSize);
+	}
+	
+	
+	/**
+	 * Reads one page of a keyset pagination, see
+	 * {@link #createKeysetPage(Table, String, String[], boolean, boolean, int)}.
+	 * 
+	 * @param table
+	 *            the table to read
+	 * @param condition
+	 *            the filter of the query, may be <code>null</code>
+	 * @param keyColumns
+	 *            the names of the key columns, which identify a row uniquely
+	 * @param descending
+	 *            <code>true</code> to sort all key columns in descending
+	 *            order
+	 * @param lastKey
+	 *            the key values of the last row of the previous page, or
+	 *            <code>null</code> for the first page
+	 * @param pageSize
+	 *            the number of rows per page
+	 * @return the rows of the page
+	 * @throws DBException
+	 *             if the query fails
+	 */
+	public Result queryKeysetPage(Table table, String condition, String[] keyColumns,
+			boolean descending, Object[] lastKey, int pageSize) throws DBException
+	{
+		if(lastKey != null && lastKey.length != keyColumns.length)
+		{
+			throw new IllegalArgumentException("The last key has " + lastKey.length
+					+ " values, expected " + keyColumns.length);
+		}
+		
+		SELECT select = createKeysetPage(table,condition,keyColumns,descending,lastKey == null,
+				pageSize);
+		if(lastKey == null)
+		{
+			return query(select);
+		}
+		return query(select,lastKey);
+	}
+	
+	
+	/**
+	 * Exports a table to a CSV file with H2's <code>CSVWRITE</code>
+	 * function, see {@link #exportCsv(String, String)}.
+	 * 
+	 * @param tableName
+	 *            the table to export
+	 * @param fileName
+	 *            the target file
+	 * @return the number of exported rows
+	 * @throws DBException
+	 *             if the export fails
+	 */
+	public long exportTableCsv(String tableName, String fileName) throws DBException
+	{
+		return exportCsv(H2Dbms.appendIdentifier(tableName,new StringBuilder("SELECT * FROM "))
+				.toString(),fileName);
+	}
+	
+	
+	/**
+	 * Exports the result of a query to a CSV file with H2's
+	 * <code>CSVWRITE</code> function, using the data source's
+	 * {@link H2JDBCDataSource#CSV_OPTIONS}. The rows are written by the
+	 * database itself and aren't transferred to the client; in server mode
+	 * the file is therefore written on the server.
+	 * 
+	 * @param query
+	 *            the query to export
+	 * @param fileName
+	 *            the target file
+	 * @return the number of exported rows
+	 * @throws DBException
+	 *             if the export fails
+	 */
+	public long exportCsv(String query, String fileName) throws DBException
+	{
+		StringBuilder sb = new StringBuilder("CALL CSVWRITE(");
+		H2Dbms.appendStringLiteral(fileName,sb).append(", ");
+		H2Dbms.appendStringLiteral(query,sb).append(", ");
+		H2Dbms.appendStringLiteral(this.h2DataSource.getCsvOptions(),sb).append(')');
+		
+		Result result = query(sb.toString());
+		try
+		{
+			return result.next() ? ((Number)result.getObject(0)).longValue() : 0;
+		}
+		finally
+		{
+			result.close();
+		}
+	}
+	
+	
+	/**
+	 * Imports a CSV file into a table with H2's <code>CSVREAD</code>
+	 * function, using the data source's
+	 * {@link H2JDBCDataSource#CSV_OPTIONS}. The first line of the file has to
+	 * contain the column names. As with the export, the file is read by the
+	 * database itself.
+	 * 
+	 * @param tableName
+	 *            the target table
+	 * @param fileName
+	 *            the CSV file
+	 * @param createTable
+	 *            <code>true</code> to create the table from the columns of the
+	 *            file, all of type <code>VARCHAR</code>, <code>false</code> to
+	 *            insert into an existing table with the columns in file order
+	 * @return the number of imported rows
+	 * @throws DBException
+	 *             if the import fails
+	 */
+	public long importCsv(String tableName, String fileName, boolean createTable)
+			throws DBException
+	{
+		StringBuilder csvRead = new StringBuilder("SELECT * FROM CSVREAD(");
+		H2Dbms.appendStringLiteral(fileName,csvRead).append(", NULL, ");
+		H2Dbms.appendStringLiteral(this.h2DataSource.getCsvOptions(),csvRead).append(')');
+		
+		Connection connection = getConnection();
+		try(Statement statement = connection.createStatement())
+		{
+			if(createTable)
+			{
+				StringBuilder sb = new StringBuilder("CREATE TABLE ");
+				H2Dbms.appendIdentifier(tableName,sb).append(" AS ").append(csvRead)
+						.append(" WITH NO DATA");
+				statement.executeUpdate(sb.toString());
+			}
+			
+			StringBuilder sb = new StringBuilder("INSERT INTO ");
+			H2Dbms.appendIdentifier(tableName,sb).append(' ').append(csvRead);
+			return statement.executeUpdate(sb.toString());
+		}
+		catch(SQLException e)
+		{
+			throw new DBException(this.h2DataSource,e);
+		}
+		finally
+		{
+			releaseConnection(this,connection);
+		}
 	}
 	
 	
@@ -72,7 +820,7 @@ public class H2JDBCConnection extends JDBCConnection<H2JDBCDataSource, H2Dbms>
 			log.debug("SQL Statement to create a table: " + createStatement.toString()); //$NON-NLS-1$
 		}
 		
-		Connection connection = super.getConnection();
+		Connection connection = getConnection();
 		Statement statement = connection.createStatement();
 		try
 		{
@@ -85,7 +833,7 @@ public class H2JDBCConnection extends JDBCConnection<H2JDBCDataSource, H2Dbms>
 		finally
 		{
 			statement.close();
-			connection.close();
+			releaseConnection(this,connection);
 		}
 	}
 	
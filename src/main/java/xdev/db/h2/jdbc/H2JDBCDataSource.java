@@ -18,12 +18,255 @@
 package xdev.db.h2.jdbc;
 
 
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 import xdev.db.DBException;
 import xdev.db.jdbc.JDBCDataSource;
 
 
 public class H2JDBCDataSource extends JDBCDataSource<H2JDBCDataSource, H2Dbms>
 {
+	/**
+	 * Read the metadata of multiple tables in one pass over the
+	 * <code>INFORMATION_SCHEMA</code> instead of querying every table on its
+	 * own.
+	 */
+	public static final Parameter<Boolean>	BULK_METADATA				= new Parameter<>(
+			"bulkMetaData",Boolean.FALSE);
+	
+	/**
+	 * Maximum number of cached table metadata entries, <code>0</code>
+	 * disables the cache.
+	 */
+	public static final Parameter<Integer>	METADATA_CACHE_SIZE			= new Parameter<>(
+			"metaDataCacheSize",500);
+	
+	/**
+	 * Count the rows of tables exactly with <code>COUNT(*)</code> instead of
+	 * reading H2's row count estimates.
+	 */
+	public static final Parameter<Boolean>	EXACT_ROW_COUNT				= new Parameter<>(
+			"exactRowCount",Boolean.FALSE);
+	
+	/**
+	 * Number of connections used to read the metadata of multiple tables in
+	 * parallel, <code>1</code> reads them one after another.
+	 */
+	public static final Parameter<Integer>	METADATA_CONNECTIONS		= new Parameter<>(
+			"metaDataConnections",1);
+	
+	/**
+	 * Number of rows sampled when the optimizer statistics are updated,
+	 * <code>0</code> samples all rows.
+	 */
+	public static final Parameter<Integer>	ANALYZE_SAMPLE_SIZE			= new Parameter<>(
+			"analyzeSampleSize",10000);
+	
+	/**
+	 * Maximum number of prepared statements cached per pooled physical
+	 * connection, <code>0</code> disables the cache. Requires the connection
+	 * pool, see {@link #POOL_MAX_SIZE}.
+	 */
+	public static final Parameter<Integer>	STATEMENT_CACHE_SIZE		= new Parameter<>(
+			"statementCacheSize",0);
+	
+	/**
+	 * Maximum number of pooled connections, <code>0</code> disables the
+	 * connection pool.
+	 */
+	public static final Parameter<Integer>	POOL_MAX_SIZE				= new Parameter<>(
+			"poolMaxSize",0);
+	
+	/**
+	 * Number of connections the pool keeps open even if they are idle, they
+	 * are opened when the pool is created.
+	 */
+	public static final Parameter<Integer>	POOL_MIN_SIZE				= new Parameter<>(
+			"poolMinSize",0);
+	
+	/**
+	 * Seconds after which idle connections above the minimum size are
+	 * closed.
+	 */
+	public static final Parameter<Integer>	POOL_IDLE_TIMEOUT			= new Parameter<>(
+			"poolIdleTimeout",300);
+	
+	/**
+	 * Seconds to wait for a free connection if all are in use.
+	 */
+	public static final Parameter<Integer>	POOL_MAX_WAIT				= new Parameter<>(
+			"poolMaxWait",30);
+	
+	/**
+	 * Check idle connections before they are handed out.
+	 */
+	public static final Parameter<Boolean>	POOL_VALIDATE				= new Parameter<>(
+			"poolValidate",Boolean.TRUE);
+	
+	/**
+	 * Number of rows sent to the database in one JDBC batch by
+	 * {@link H2JDBCConnection#bulkInsert(String, String[], java.util.Iterator)}.
+	 */
+	public static final Parameter<Integer>	BULK_BATCH_SIZE				= new Parameter<>(
+			"bulkBatchSize",1000);
+	
+	/**
+	 * Number of rows after which a bulk insert in auto-commit mode commits,
+	 * <code>0</code> commits only once at the end.
+	 */
+	public static final Parameter<Integer>	BULK_COMMIT_INTERVAL		= new Parameter<>(
+			"bulkCommitInterval",10000);
+	
+	/**
+	 * Options of H2's <code>CSVREAD</code> and <code>CSVWRITE</code>
+	 * functions used by the CSV import and export, e.g.
+	 * <code>charset=UTF-8 fieldSeparator=;</code>.
+	 */
+	public static final Parameter<String>	CSV_OPTIONS					= new Parameter<>(
+			"csvOptions","charset=UTF-8");
+	
+	/**
+	 * Number of rows read from the database at once by streaming queries.
+	 */
+	public static final Parameter<Integer>	FETCH_SIZE					= new Parameter<>(
+			"fetchSize",100);
+	
+	/**
+	 * Name of a {@link H2TuningProfile}, e.g. <code>read-heavy</code>,
+	 * <code>bulk-load</code> or <code>low-memory</code>; empty for none.
+	 */
+	public static final Parameter<String>	TUNING_PROFILE				= new Parameter<>(
+			"tuningProfile","");
+	
+	/**
+	 * Size of H2's page cache in KB, <code>-1</code> for H2's default.
+	 */
+	public static final Parameter<Integer>	CACHE_SIZE					= new Parameter<>(
+			"cacheSize",-1);
+	
+	/**
+	 * Compress the pages of the database file.
+	 */
+	public static final Parameter<Boolean>	COMPRESS					= new Parameter<>(
+			"compress",Boolean.FALSE);
+	
+	/**
+	 * Maximum delay in milliseconds until committed changes are written to
+	 * disk, <code>-1</code> for H2's default.
+	 */
+	public static final Parameter<Integer>	WRITE_DELAY					= new Parameter<>(
+			"writeDelay",-1);
+	
+	/**
+	 * Milliseconds to wait for a lock, <code>-1</code> for H2's default.
+	 */
+	public static final Parameter<Integer>	LOCK_TIMEOUT				= new Parameter<>(
+			"lockTimeout",-1);
+	
+	/**
+	 * Maximum time in milliseconds spent compacting the database file when it
+	 * is closed, <code>-1</code> for H2's default.
+	 */
+	public static final Parameter<Integer>	MAX_COMPACT_TIME			= new Parameter<>(
+			"maxCompactTime",-1);
+	
+	/**
+	 * Keep an embedded database in memory only, see
+	 * {@link H2InMemoryDatabase}.
+	 */
+	public static final Parameter<Boolean>	IN_MEMORY					= new Parameter<>(
+			"inMemory",Boolean.FALSE);
+	
+	/**
+	 * SQL script an in-memory database is loaded from and snapshotted to,
+	 * empty for no persistence.
+	 */
+	public static final Parameter<String>	MEMORY_SCRIPT				= new Parameter<>(
+			"memoryScript","");
+	
+	/**
+	 * Seconds between two snapshots of an in-memory database,
+	 * <code>0</code> to snapshot only when it is closed.
+	 */
+	public static final Parameter<Integer>	MEMORY_SNAPSHOT_INTERVAL	= new Parameter<>(
+			"memorySnapshotInterval",300);
+	
+	/**
+	 * Open an embedded database in mixed mode: the first process opens the
+	 * file locally and starts a server, other processes using the same
+	 * database connect to it over TCP automatically.
+	 */
+	public static final Parameter<Boolean>	AUTO_SERVER					= new Parameter<>(
+			"autoServer",Boolean.FALSE);
+	
+	/**
+	 * Port of the automatically started server, <code>0</code> for a random
+	 * port.
+	 */
+	public static final Parameter<Integer>	AUTO_SERVER_PORT			= new Parameter<>(
+			"autoServerPort",0);
+	
+	/**
+	 * Start a TCP server for a server data source within this JVM on the
+	 * data source's port, see {@link H2ServerManager}.
+	 */
+	public static final Parameter<Boolean>	MANAGED_SERVER				= new Parameter<>(
+			"managedServer",Boolean.FALSE);
+	
+	/**
+	 * Directory of the databases of the managed server.
+	 */
+	public static final Parameter<String>	SERVER_BASE_DIR				= new Parameter<>(
+			"serverBaseDir",".");
+	
+	/**
+	 * Accept connections to the managed server from other hosts.
+	 */
+	public static final Parameter<Boolean>	SERVER_ALLOW_OTHERS			= new Parameter<>(
+			"serverAllowOthers",Boolean.FALSE);
+	
+	/**
+	 * Number of times a write failed with a transient error, e.g. a lock
+	 * timeout or a deadlock, is retried, <code>0</code> disables retrying.
+	 * Requires the connection pool, see {@link #POOL_MAX_SIZE}.
+	 */
+	public static final Parameter<Integer>	RETRY_MAX					= new Parameter<>(
+			"retryMax",3);
+	
+	/**
+	 * Milliseconds to wait before the first retry, doubled for every further
+	 * retry.
+	 */
+	public static final Parameter<Integer>	RETRY_BACKOFF				= new Parameter<>(
+			"retryBackoff",50);
+	
+	/**
+	 * Maximum milliseconds to wait before a retry.
+	 */
+	public static final Parameter<Integer>	RETRY_MAX_BACKOFF			= new Parameter<>(
+			"retryMaxBackoff",2000);
+	
+	/**
+	 * Storage of tables created by a schema synchronization if the table
+	 * metadata doesn't specify one: <code>cached</code>,
+	 * <code>memory</code>, <code>not persistent</code>,
+	 * <code>global temporary</code> or <code>local temporary</code>, see
+	 * {@link H2TableStorage}.
+	 */
+	public static final Parameter<String>	TABLE_STORAGE				= new Parameter<>(
+			"tableStorage","cached");
+	
+	private transient H2MetaDataCache		metaDataCache;
+	private transient H2ConnectionPool		connectionPool;
+	private transient boolean				settingsLogged;
+	private transient H2InMemoryDatabase	inMemoryDatabase;
+	private transient H2ServerManager		serverManager;
+	
+	
 	public H2JDBCDataSource()
 	{
 		super(new H2Dbms());
@@ -36,15 +279,376 @@ public class H2JDBCDataSource extends JDBCDataSource<H2JDBCDataSource, H2Dbms>
 	{
 		return new Parameter[]{EMBEDDED.clone(),HOST.clone(),PORT.clone(5435),USERNAME.clone("SA"),
 				PASSWORD.clone(),CATALOG.clone(),URL_EXTENSION.clone(),
-				IS_SERVER_DATASOURCE.clone(),SERVER_URL.clone(),AUTH_KEY.clone()};
+				IS_SERVER_DATASOURCE.clone(),SERVER_URL.clone(),AUTH_KEY.clone(),
+				BULK_METADATA.clone(),METADATA_CACHE_SIZE.clone(),EXACT_ROW_COUNT.clone(),
+				METADATA_CONNECTIONS.clone(),ANALYZE_SAMPLE_SIZE.clone(),
+				STATEMENT_CACHE_SIZE.clone(),POOL_MAX_SIZE.clone(),POOL_MIN_SIZE.clone(),
+				POOL_IDLE_TIMEOUT.clone(),POOL_MAX_WAIT.clone(),POOL_VALIDATE.clone(),
+				BULK_BATCH_SIZE.clone(),BULK_COMMIT_INTERVAL.clone(),
+				CSV_OPTIONS.clone(),FETCH_SIZE.clone(),TUNING_PROFILE.clone(),
+				CACHE_SIZE.clone(),COMPRESS.clone(),WRITE_DELAY.clone(),LOCK_TIMEOUT.clone(),
+				MAX_COMPACT_TIME.clone(),IN_MEMORY.clone(),MEMORY_SCRIPT.clone(),
+				MEMORY_SNAPSHOT_INTERVAL.clone(),AUTO_SERVER.clone(),AUTO_SERVER_PORT.clone(),
+				MANAGED_SERVER.clone(),SERVER_BASE_DIR.clone(),SERVER_ALLOW_OTHERS.clone(),
+				RETRY_MAX.clone(),RETRY_BACKOFF.clone(),RETRY_MAX_BACKOFF.clone(),
+				TABLE_STORAGE.clone()};
 	}
 	
 	
+	public boolean isBulkMetaData()
+	{
+		return getParameterValue(BULK_METADATA);
+	}
+	
+	
+	public boolean isExactRowCount()
+	{
+		return getParameterValue(EXACT_ROW_COUNT);
+	}
+	
+	
+	public int getMetaDataConnections()
+	{
+		return getParameterValue(METADATA_CONNECTIONS);
+	}
+	
+	
+	public int getAnalyzeSampleSize()
+	{
+		return getParameterValue(ANALYZE_SAMPLE_SIZE);
+	}
+	
+	
+	public int getStatementCacheSize()
+	{
+		return getParameterValue(STATEMENT_CACHE_SIZE);
+	}
+	
+	
+	public int getBulkBatchSize()
+	{
+		return getParameterValue(BULK_BATCH_SIZE);
+	}
+	
+	
+	public int getBulkCommitInterval()
+	{
+		return getParameterValue(BULK_COMMIT_INTERVAL);
+	}
+	
+	
+	public String getCsvOptions()
+	{
+		return getParameterValue(CSV_OPTIONS);
+	}
+	
+	
+	public int getFetchSize()
+	{
+		return getParameterValue(FETCH_SIZE);
+	}
+	
+	
+	/**
+	 * @return the retry policy for writes failed with transient errors
+	 */
+	public H2RetryPolicy getRetryPolicy()
+	{
+		return new H2RetryPolicy(getParameterValue(RETRY_MAX),getParameterValue(RETRY_BACKOFF),
+				getParameterValue(RETRY_MAX_BACKOFF));
+	}
+	
+	
+	/**
+	 * @return the default storage of created tables
+	 * @throws IllegalArgumentException
+	 *             if {@link #TABLE_STORAGE} is unknown
+	 */
+	public H2TableStorage getTableStorage() throws IllegalArgumentException
+	{
+		return H2TableStorage.forName(getParameterValue(TABLE_STORAGE));
+	}
+	
+	
+	public boolean isAutoServer()
+	{
+		return getParameterValue(AUTO_SERVER);
+	}
+	
+	
+	/**
+	 * @return <code>true</code> if the database is an embedded in-memory
+	 *         database
+	 */
+	public boolean isInMemory()
+	{
+		return isEmbedded() && getParameterValue(IN_MEMORY);
+	}
+	
+	
+	/**
+	 * @return the in-memory database of this data source, or
+	 *         <code>null</code> if it isn't an in-memory data source
+	 */
+	public synchronized H2InMemoryDatabase getInMemoryDatabase()
+	{
+		if(this.inMemoryDatabase == null && isInMemory())
+		{
+			String script = getParameterValue(MEMORY_SCRIPT);
+			this.inMemoryDatabase = new H2InMemoryDatabase(getConnectionInformation()
+					.createJdbcConnectionUrl(),getUserName(),getPassword().getPlainText(),
+					script.length() > 0 ? new File(script) : null,
+					getParameterValue(MEMORY_SNAPSHOT_INTERVAL) * 1000L);
+		}
+		return this.inMemoryDatabase;
+	}
+	
+	
+	/**
+	 * Writes a final snapshot of the in-memory database and closes it, it is
+	 * loaded again on the next connection. The connection pool is closed
+	 * first, so no idle connection outlives the database.
+	 * 
+	 * @throws DBException
+	 *             if the snapshot can't be written
+	 */
+	public synchronized void closeInMemoryDatabase() throws DBException
+	{
+		if(this.inMemoryDatabase != null)
+		{
+			closeConnectionPool();
+			try
+			{
+				this.inMemoryDatabase.close();
+			}
+			catch(SQLException | IOException e)
+			{
+				throw new DBException(this,e);
+			}
+			finally
+			{
+				this.inMemoryDatabase = null;
+			}
+		}
+	}
+	
+	
+	/**
+	 * @return the manager of the TCP server within this JVM, or
+	 *         <code>null</code> if {@link #MANAGED_SERVER} isn't set
+	 */
+	public synchronized H2ServerManager getServerManager()
+	{
+		if(this.serverManager == null && !isEmbedded() && getParameterValue(MANAGED_SERVER))
+		{
+			this.serverManager = new H2ServerManager(getPort(),
+					getParameterValue(SERVER_ALLOW_OTHERS),getParameterValue(SERVER_BASE_DIR));
+		}
+		return this.serverManager;
+	}
+	
+	
+	/**
+	 * Starts the managed TCP server, if there is one and it isn't running
+	 * yet.
+	 * 
+	 * @throws DBException
+	 *             if the server can't be started
+	 */
+	public void startServer() throws DBException
+	{
+		H2ServerManager serverManager = getServerManager();
+		if(serverManager != null && !serverManager.isRunning())
+		{
+			try
+			{
+				serverManager.start();
+			}
+			catch(SQLException e)
+			{
+				throw new DBException(this,e);
+			}
+			closeConnectionPool();
+		}
+	}
+	
+	
+	/**
+	 * Starts the managed TCP server before the first connection, unless it
+	 * has been stopped explicitly by {@link #stopServer()}.
+	 */
+	void startServerIfNotStopped() throws DBException
+	{
+		H2ServerManager serverManager = getServerManager();
+		if(serverManager != null && !serverManager.isStopped())
+		{
+			startServer();
+		}
+	}
+	
+	
+	/**
+	 * Stops the managed TCP server, connections of other processes are
+	 * closed. The server isn't started again by new connections, only by
+	 * {@link #startServer()}.
+	 */
+	public void stopServer()
+	{
+		H2ServerManager serverManager = getServerManager();
+		if(serverManager != null)
+		{
+			boolean running = serverManager.isRunning();
+			serverManager.stop();
+			if(running)
+			{
+				closeConnectionPool();
+			}
+		}
+	}
+	
+	
+	/**
+	 * @return the current session metrics of the database
+	 * @throws DBException
+	 *             if the metrics can't be read
+	 */
+	public H2SessionMetrics getSessionMetrics() throws DBException
+	{
+		H2JDBCConnection connection = openConnectionImpl();
+		try
+		{
+			return H2SessionMetrics.read(connection);
+		}
+		finally
+		{
+			connection.close();
+		}
+	}
+	
+	
+	/**
+	 * Collects the database settings of the {@link #TUNING_PROFILE} and the
+	 * explicitly set tuning parameters, which override the profile's ones,
+	 * and the {@link #AUTO_SERVER} settings.
+	 * 
+	 * @return the URL settings by name, in URL order
+	 * @throws IllegalArgumentException
+	 *             if the profile is unknown or a value is out of range
+	 */
+	public Map<String, String> getDatabaseSettings() throws IllegalArgumentException
+	{
+		Map<String, String> settings = new LinkedHashMap<>();
+		
+		H2TuningProfile profile = H2TuningProfile.forName(getParameterValue(TUNING_PROFILE));
+		if(profile != null)
+		{
+			settings.putAll(profile.getSettings());
+		}
+		
+		putSetting(settings,"CACHE_SIZE",CACHE_SIZE,1);
+		if(getParameterValue(COMPRESS))
+		{
+			settings.put("COMPRESS","TRUE");
+		}
+		putSetting(settings,"WRITE_DELAY",WRITE_DELAY,0);
+		putSetting(settings,"LOCK_TIMEOUT",LOCK_TIMEOUT,0);
+		putSetting(settings,"MAX_COMPACT_TIME",MAX_COMPACT_TIME,0);
+		
+		if(getParameterValue(AUTO_SERVER))
+		{
+			if(!isEmbedded() || isInMemory())
+			{
+				throw new IllegalArgumentException(
+						"autoServer is only supported for embedded file databases");
+			}
+			settings.put("AUTO_SERVER","TRUE");
+			int port = getParameterValue(AUTO_SERVER_PORT);
+			if(port < 0 || port > 65535)
+			{
+				throw new IllegalArgumentException(
+						"autoServerPort must be between 0 and 65535, but is " + port);
+			}
+			if(port > 0)
+			{
+				settings.put("AUTO_SERVER_PORT",String.valueOf(port));
+			}
+		}
+		
+		return settings;
+	}
+	
+	
+	private void putSetting(Map<String, String> settings, String name,
+			Parameter<Integer> parameter, int minValue) throws IllegalArgumentException
+	{
+		int value = getParameterValue(parameter);
+		if(value == -1)
+		{
+			return;
+		}
+		if(value < minValue)
+		{
+			throw new IllegalArgumentException(name + " must be -1 or at least "
+					+ minValue + ", but is " + value);
+		}
+		settings.put(name,String.valueOf(value));
+	}
+	
+	
+	/**
+	 * Marks the effective database settings as logged.
+	 * 
+	 * @return <code>true</code> on the first call, i.e. if the settings
+	 *         should be logged
+	 */
+	synchronized boolean markSettingsLogged()
+	{
+		if(this.settingsLogged)
+		{
+			return false;
+		}
+		this.settingsLogged = true;
+		return true;
+	}
+	
+	
+	/**
+	 * @return the table metadata cache of this data source, or
+	 *         <code>null</code> if it is disabled
+	 */
+	public synchronized H2MetaDataCache getMetaDataCache()
+	{
+		if(this.metaDataCache == null)
+		{
+			int size = getParameterValue(METADATA_CACHE_SIZE);
+			if(size > 0)
+			{
+				this.metaDataCache = new H2MetaDataCache(size);
+			}
+		}
+		return this.metaDataCache;
+	}
+	
+	
+	/**
+	 * If the managed server of this data source is running, connections are
+	 * opened directly on the database instead of over TCP.
+	 */
 	@Override
 	protected H2ConnectionInformation getConnectionInformation()
 	{
-		return new H2ConnectionInformation(getHost(),getPort(),isEmbedded(),getUserName(),
-				getPassword().getPlainText(),getCatalog(),getUrlExtension(),getDbmsAdaptor());
+		H2ServerManager serverManager = getServerManager();
+		if(serverManager != null && serverManager.isRunning())
+		{
+			return new H2ConnectionInformation(getHost(),getPort(),true,false,getUserName(),
+					getPassword().getPlainText(),serverManager.getLocalDatabase(getCatalog()),
+					getUrlExtension(),getDbmsAdaptor(),getDatabaseSettings());
+		}
+		
+		return new H2ConnectionInformation(getHost(),getPort(),isEmbedded(),isInMemory(),
+				getUserName(),
+				getPassword().getPlainText(),getCatalog(),getUrlExtension(),getDbmsAdaptor(),
+				getDatabaseSettings());
 	}
 	
 	
@@ -55,6 +659,52 @@ public class H2JDBCDataSource extends JDBCDataSource<H2JDBCDataSource, H2Dbms>
 	}
 	
 	
+	/**
+	 * @return the connection pool of this data source, created on first use,
+	 *         or <code>null</code> if pooling is disabled
+	 */
+	public synchronized H2ConnectionPool getConnectionPool()
+	{
+		if(this.connectionPool == null)
+		{
+			int maxSize = getParameterValue(POOL_MAX_SIZE);
+			if(maxSize > 0)
+			{
+				this.connectionPool = new H2ConnectionPool(getConnectionInformation()
+						.createJdbcConnectionUrl(),getUserName(),getPassword().getPlainText(),
+						getParameterValue(POOL_MIN_SIZE),maxSize,
+						getParameterValue(POOL_IDLE_TIMEOUT) * 1000L,
+						getParameterValue(POOL_MAX_WAIT) * 1000L,
+						getParameterValue(POOL_VALIDATE),getStatementCacheSize());
+				try
+				{
+					this.connectionPool.start();
+				}
+				catch(SQLException e)
+				{
+					// reported again by the first borrow
+					e.printStackTrace();
+				}
+			}
+		}
+		return this.connectionPool;
+	}
+	
+	
+	/**
+	 * Closes all idle pooled connections, the pool is created again on the
+	 * next request.
+	 */
+	public synchronized void closeConnectionPool()
+	{
+		if(this.connectionPool != null)
+		{
+			this.connectionPool.close();
+			this.connectionPool = null;
+		}
+	}
+	
+	
 	@Override
 	public H2JDBCMetaData getMetaData() throws DBException
 	{
@@ -18,19 +18,29 @@
 package xdev.db.h2.jdbc;
 
 
+import java.sql.Connection;
 import java.sql.DatabaseMetaData;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import xdev.db.ColumnMetaData;
 import xdev.db.DBException;
@@ -44,15 +54,37 @@ import xdev.db.jdbc.JDBCMetaData;
 import xdev.db.sql.Functions;
 import xdev.db.sql.SELECT;
 import xdev.db.sql.Table;
+import xdev.util.ProgressMonitor;
 
 
 public class H2JDBCMetaData extends JDBCMetaData
 {
 	private static final long		serialVersionUID	= 2862594319338582561L;
-	private static final DateFormat	dateFormat			= new SimpleDateFormat("yyyy-MM-dd");
-	private static final DateFormat	timeFormat			= new SimpleDateFormat("HH:mm:ss");
-	private static final DateFormat	timestampFormat		= new SimpleDateFormat(
-																"yyyy-MM-dd HH:mm:ss");
+	
+	/**
+	 * The migration the DDL hooks of the current thread write into, see
+	 * {@link #synchronize(JDBCConnection, ProgressMonitor, SchemaSync)}.
+	 */
+	private static final ThreadLocal<H2SchemaMigration>	recordingMigration	= new ThreadLocal<>();
+	
+	private static final String		SELECT_ROW_COUNT_ESTIMATE	= "SELECT ROW_COUNT_ESTIMATE "
+																		+ "FROM INFORMATION_SCHEMA.TABLES "
+																		+ "WHERE TABLE_SCHEMA = CURRENT_SCHEMA "
+																		+ "AND TABLE_NAME = ?";
+	private static final String		SELECT_STORAGE_TYPE			= "SELECT STORAGE_TYPE "
+																		+ "FROM INFORMATION_SCHEMA.TABLES "
+																		+ "WHERE TABLE_SCHEMA = CURRENT_SCHEMA "
+																		+ "AND TABLE_NAME = ?";
+	private static final String		SELECT_TABLE_NAMES			= "SELECT TABLE_NAME "
+																		+ "FROM INFORMATION_SCHEMA.TABLES "
+																		+ "WHERE TABLE_SCHEMA = CURRENT_SCHEMA "
+																		+ "AND TABLE_TYPE = 'BASE TABLE'";
+	private static final String		SELECT_UNIQUE_CONSTRAINT	= "SELECT CONSTRAINT_NAME "
+																		+ "FROM INFORMATION_SCHEMA.TABLE_CONSTRAINTS "
+																		+ "WHERE TABLE_SCHEMA = CURRENT_SCHEMA "
+																		+ "AND TABLE_NAME = ? "
+																		+ "AND CONSTRAINT_TYPE = 'UNIQUE' "
+																		+ "AND (INDEX_NAME = ? OR CONSTRAINT_NAME = ?)";
 	
 	
 	public H2JDBCMetaData(H2JDBCDataSource dataSource) throws DBException
@@ -75,12 +107,342 @@ public class H2JDBCMetaData extends JDBCMetaData
 	}
 	
 	
+	H2JDBCDataSource getH2DataSource()
+	{
+		return (H2JDBCDataSource)this.dataSource;
+	}
+	
+	
+	@Override
+	public TableMetaData[] getTableMetaData(ProgressMonitor monitor, int flags,
+			TableInfo... tables) throws DBException
+	{
+		if(tables.length < 2)
+		{
+			return super.getTableMetaData(monitor,flags,tables);
+		}
+		
+		if(!getH2DataSource().isBulkMetaData())
+		{
+			int connections = Math.min(getH2DataSource().getMetaDataConnections(),tables.length);
+			if(connections < 2)
+			{
+				return super.getTableMetaData(monitor,flags,tables);
+			}
+			return getTableMetaDataParallel(monitor,flags,tables,connections);
+		}
+		
+		H2MetaDataCache cache = getH2DataSource().getMetaDataCache();
+		if(monitor != null)
+		{
+			monitor.beginTask("Reading table metadata",tables.length);
+		}
+		
+		JDBCConnection jdbcConnection = (JDBCConnection)this.dataSource.openConnection();
+		try
+		{
+			if(cache != null)
+			{
+				cache.validate(jdbcConnection);
+			}
+			
+			H2SchemaSnapshot snapshot = null;
+			DatabaseMetaData meta = null;
+			
+			TableMetaData[] tableMetaData = new TableMetaData[tables.length];
+			for(int i = 0; i < tables.length; i++)
+			{
+				if(monitor != null && monitor.isCanceled())
+				{
+					throw new DBException(this.dataSource,
+							"Reading the table metadata was canceled.");
+				}
+				
+				TableInfo table = tables[i];
+				if(cache != null)
+				{
+					tableMetaData[i] = cache.get(table.getName(),flags);
+				}
+				if(tableMetaData[i] == null)
+				{
+					if(snapshot == null)
+					{
+						snapshot = H2SchemaSnapshot.load(jdbcConnection,true,
+								(flags & ROW_COUNT) != 0 && !getH2DataSource().isExactRowCount());
+					}
+					if(snapshot.contains(table.getName()))
+					{
+						tableMetaData[i] = getTableMetaData(jdbcConnection,snapshot,flags,table);
+					}
+					else
+					{
+						if(meta == null)
+						{
+							meta = jdbcConnection.getConnection().getMetaData();
+						}
+						tableMetaData[i] = loadTableMetaData(jdbcConnection,meta,flags,table);
+					}
+					
+					if(cache != null)
+					{
+						cache.put(table.getName(),flags,tableMetaData[i]);
+					}
+				}
+				
+				if(monitor != null)
+				{
+					monitor.worked(1);
+				}
+			}
+			return tableMetaData;
+		}
+		catch(SQLException e)
+		{
+			throw new DBException(this.dataSource,e);
+		}
+		finally
+		{
+			jdbcConnection.close();
+			if(monitor != null)
+			{
+				monitor.done();
+			}
+		}
+	}
+	
+	
+	/**
+	 * Reads the metadata of the tables with a fixed number of worker threads,
+	 * each with its own connection. The result has the order of the requested
+	 * tables. A table which can't be read doesn't stop the others; after all
+	 * tables are done, the failure of the first failed table is thrown.
+	 * Progress is reported per finished table; if the monitor is canceled,
+	 * the workers stop after their current table.
+	 */
+	private TableMetaData[] getTableMetaDataParallel(final ProgressMonitor monitor,
+			final int flags, final TableInfo[] tables, int connections) throws DBException
+	{
+		final TableMetaData[] tableMetaData = new TableMetaData[tables.length];
+		final Exception[] failures = new Exception[tables.length];
+		final AtomicInteger nextTable = new AtomicInteger();
+		final AtomicBoolean canceled = new AtomicBoolean();
+		final BlockingQueue<Integer> finished = new LinkedBlockingQueue<>();
+		
+		if(monitor != null)
+		{
+			monitor.beginTask("Reading table metadata",tables.length);
+		}
+		
+		ExecutorService executor = Executors.newFixedThreadPool(connections);
+		List<Future<?>> workers = new ArrayList<>(connections);
+		try
+		{
+			for(int i = 0; i < connections; i++)
+			{
+				workers.add(executor.submit(new Callable<Void>()
+				{
+					@Override
+					public Void call() throws Exception
+					{
+						JDBCConnection jdbcConnection = (JDBCConnection)H2JDBCMetaData.this.dataSource
+								.openConnection();
+						try
+						{
+							DatabaseMetaData meta = jdbcConnection.getConnection().getMetaData();
+							int index;
+							while(!canceled.get()
+									&& (index = nextTable.getAndIncrement()) < tables.length)
+							{
+								try
+								{
+									tableMetaData[index] = getTableMetaData(jdbcConnection,meta,
+											flags,tables[index]);
+								}
+								catch(Exception e)
+								{
+									failures[index] = e;
+								}
+								finally
+								{
+									finished.add(index);
+								}
+							}
+						}
+						finally
+						{
+							jdbcConnection.close();
+						}
+						return null;
+					}
+				}));
+			}
+			
+			int done = 0;
+			while(done < tables.length)
+			{
+				Integer index = finished.poll(100,TimeUnit.MILLISECONDS);
+				if(index != null)
+				{
+					done++;
+					if(monitor != null)
+					{
+						monitor.worked(1);
+					}
+				}
+				else if(allDone(workers) && finished.isEmpty())
+				{
+					// all workers failed to open their connection
+					break;
+				}
+				
+				if(monitor != null && monitor.isCanceled())
+				{
+					canceled.set(true);
+					throw new DBException(this.dataSource,
+							"Reading the table metadata was canceled.");
+				}
+			}
+			
+			DBException workerFailure = null;
+			for(Future<?> worker : workers)
+			{
+				try
+				{
+					worker.get();
+				}
+				catch(ExecutionException e)
+				{
+					if(workerFailure == null)
+					{
+						workerFailure = toDBException(e.getCause());
+					}
+				}
+			}
+			
+			for(int i = 0; i < tables.length; i++)
+			{
+				if(failures[i] != null)
+				{
+					throw toDBException(failures[i]);
+				}
+				if(tableMetaData[i] == null && workerFailure != null)
+				{
+					throw workerFailure;
+				}
+			}
+			
+			return tableMetaData;
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new DBException(this.dataSource,e);
+		}
+		finally
+		{
+			canceled.set(true);
+			executor.shutdownNow();
+			if(monitor != null)
+			{
+				monitor.done();
+			}
+		}
+	}
+	
+	
+	private static boolean allDone(List<Future<?>> futures)
+	{
+		for(Future<?> future : futures)
+		{
+			if(!future.isDone())
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	
+	private DBException toDBException(Throwable t)
+	{
+		return t instanceof DBException ? (DBException)t : new DBException(this.dataSource,t);
+	}
+	
+	
+	private TableMetaData getTableMetaData(JDBCConnection jdbcConnection,
+			H2SchemaSnapshot snapshot, int flags, TableInfo table) throws DBException
+	{
+		String tableName = table.getName();
+		boolean exactRowCount = getH2DataSource().isExactRowCount();
+		
+		List<H2SchemaSnapshot.ColumnInfo> columnInfos = snapshot.getColumns(tableName);
+		ColumnMetaData[] columns = new ColumnMetaData[columnInfos.size()];
+		for(int i = 0; i < columns.length; i++)
+		{
+			H2SchemaSnapshot.ColumnInfo info = columnInfos.get(i);
+			columns[i] = new ColumnMetaData(tableName,info.name,info.name,info.type,info.length,
+					info.scale,null,info.nullable,info.autoIncrement);
+			if(info.defaultEvaluated)
+			{
+				columns[i].setDefaultValue(checkDefaultValue(info.defaultValue,columns[i]));
+			}
+		}
+		
+		List<Index> indices = new ArrayList<>();
+		int count = UNKNOWN_ROW_COUNT;
+		
+		if(table.getType() == TableType.TABLE)
+		{
+			if((flags & INDICES) != 0)
+			{
+				for(H2SchemaSnapshot.IndexColumns info : snapshot.getIndices(tableName))
+				{
+					String indexName = info.type == IndexType.PRIMARY_KEY ? "PRIMARY_KEY"
+							: info.name;
+					indices.add(info.toIndex(indexName));
+				}
+			}
+			
+			if((flags & ROW_COUNT) != 0)
+			{
+				Long estimate = exactRowCount ? null : snapshot.getRowCountEstimate(tableName);
+				count = estimate != null ? (int)Math.min(estimate,Integer.MAX_VALUE)
+						: getRowCount(jdbcConnection,tableName,exactRowCount);
+			}
+		}
+		
+		return new H2TableMetaData(table,columns,indices.toArray(new Index[indices.size()]),
+				count,!exactRowCount,snapshot.getStorage(tableName));
+	}
+	
+	
 	@Override
 	protected TableMetaData getTableMetaData(JDBCConnection jdbcConnection, DatabaseMetaData meta,
 			int flags, TableInfo table) throws DBException, SQLException
+	{
+		H2MetaDataCache cache = getH2DataSource().getMetaDataCache();
+		if(cache == null)
+		{
+			return loadTableMetaData(jdbcConnection,meta,flags,table);
+		}
+		
+		cache.validate(jdbcConnection);
+		TableMetaData tableMetaData = cache.get(table.getName(),flags);
+		if(tableMetaData == null)
+		{
+			tableMetaData = loadTableMetaData(jdbcConnection,meta,flags,table);
+			cache.put(table.getName(),flags,tableMetaData);
+		}
+		return tableMetaData;
+	}
+	
+	
+	private TableMetaData loadTableMetaData(JDBCConnection jdbcConnection, DatabaseMetaData meta,
+			int flags, TableInfo table) throws DBException, SQLException
 	{
 		String catalog = getCatalog(this.dataSource);
 		String schema = getSchema(this.dataSource);
+		boolean exactRowCount = getH2DataSource().isExactRowCount();
 		
 		String tableName = table.getName();
 		Table tableIdentity = new Table(tableName,"META_DUMMY");
@@ -171,79 +533,149 @@ public class H2JDBCMetaData extends JDBCMetaData
 			}
 		}
 		
-		Map<IndexInfo, Set<String>> indexMap = new Hashtable<>();
+		Map<String, H2SchemaSnapshot.IndexColumns> indexMap = new LinkedHashMap<>();
 		int count = UNKNOWN_ROW_COUNT;
 		
 		if(table.getType() == TableType.TABLE)
 		{
-			Set<String> primaryKeyColumns = new HashSet<>();
-			rs = meta.getPrimaryKeys(catalog,schema,tableName);
-			while(rs.next())
-			{
-				primaryKeyColumns.add(rs.getString("COLUMN_NAME"));
-			}
-			rs.close();
-			
 			if((flags & INDICES) != 0)
 			{
+				H2SchemaSnapshot.IndexColumns primaryKey = new H2SchemaSnapshot.IndexColumns();
+				primaryKey.type = IndexType.PRIMARY_KEY;
+				primaryKey.kind = H2Index.Kind.DEFAULT;
+				rs = meta.getPrimaryKeys(catalog,schema,tableName);
+				Map<Short, String> primaryKeyColumns = new TreeMap<>();
+				while(rs.next())
+				{
+					primaryKeyColumns.put(rs.getShort("KEY_SEQ"),rs.getString("COLUMN_NAME"));
+				}
+				rs.close();
 				if(primaryKeyColumns.size() > 0)
 				{
-					indexMap.put(new IndexInfo("PRIMARY_KEY",IndexType.PRIMARY_KEY),
-							primaryKeyColumns);
+					for(String column : primaryKeyColumns.values())
+					{
+						primaryKey.columns.add(column);
+						primaryKey.descending.add(Boolean.FALSE);
+					}
+					indexMap.put("PRIMARY_KEY",primaryKey);
 				}
 				
+				// rows are ordered by index name and ORDINAL_POSITION
 				rs = meta.getIndexInfo(catalog,schema,tableName,false,true);
 				while(rs.next())
 				{
 					String indexName = rs.getString("INDEX_NAME");
 					String columnName = rs.getString("COLUMN_NAME");
-					if(indexName != null && columnName != null
-							&& !primaryKeyColumns.contains(columnName))
+					if(indexName != null && columnName != null)
 					{
-						boolean unique = !rs.getBoolean("NON_UNIQUE");
-						IndexInfo info = new IndexInfo(indexName,unique ? IndexType.UNIQUE
-								: IndexType.NORMAL);
-						Set<String> columnNames = indexMap.get(info);
-						if(columnNames == null)
+						H2SchemaSnapshot.IndexColumns info = indexMap.get(indexName);
+						if(info == null)
 						{
-							columnNames = new HashSet<>();
-							indexMap.put(info,columnNames);
+							info = new H2SchemaSnapshot.IndexColumns();
+							info.name = indexName;
+							info.type = rs.getBoolean("NON_UNIQUE") ? IndexType.NORMAL
+									: IndexType.UNIQUE;
+							info.kind = rs.getShort("TYPE") == DatabaseMetaData.tableIndexHashed
+									? H2Index.Kind.HASH : H2Index.Kind.DEFAULT;
+							indexMap.put(indexName,info);
 						}
-						columnNames.add(columnName);
+						info.columns.add(columnName);
+						info.descending.add("D".equals(rs.getString("ASC_OR_DESC")));
 					}
 				}
 				rs.close();
+				
+				// the index of the primary key is reported as a unique index,
+				// which carries its kind
+				for(Iterator<H2SchemaSnapshot.IndexColumns> it = indexMap.values().iterator(); it
+						.hasNext();)
+				{
+					H2SchemaSnapshot.IndexColumns info = it.next();
+					if(info != primaryKey && info.type == IndexType.UNIQUE
+							&& info.columns.equals(primaryKey.columns))
+					{
+						primaryKey.kind = info.kind;
+						it.remove();
+					}
+				}
 			}
 			
 			if((flags & ROW_COUNT) != 0)
 			{
-				try
+				count = getRowCount(jdbcConnection,tableName,exactRowCount);
+			}
+		}
+		
+		Index[] indices = new Index[indexMap.size()];
+		int i = 0;
+		for(Map.Entry<String, H2SchemaSnapshot.IndexColumns> entry : indexMap.entrySet())
+		{
+			indices[i++] = entry.getValue().toIndex(entry.getKey());
+		}
+		
+		H2TableStorage storage = null;
+		if(table.getType() == TableType.TABLE)
+		{
+			Result storageResult = jdbcConnection.query(SELECT_STORAGE_TYPE,tableName);
+			try
+			{
+				if(storageResult.next())
 				{
-					result = jdbcConnection.query(new SELECT().columns(Functions.COUNT()).FROM(
-							tableIdentity));
-					if(result.next())
-					{
-						count = result.getInt(0);
-					}
-					result.close();
+					storage = H2TableStorage.forStorageType((String)storageResult.getObject(0));
 				}
-				catch(Exception e)
+			}
+			finally
+			{
+				storageResult.close();
+			}
+		}
+		
+		return new H2TableMetaData(table,columns,indices,count,!exactRowCount,storage);
+	}
+	
+	
+	/**
+	 * Counts the rows of a table, either exactly with <code>COUNT(*)</code>,
+	 * which has to scan the whole table, or estimated from the statistics H2
+	 * keeps for every table.
+	 */
+	private int getRowCount(JDBCConnection jdbcConnection, String tableName, boolean exact)
+	{
+		try
+		{
+			Result result;
+			if(exact)
+			{
+				result = jdbcConnection.query(new SELECT().columns(Functions.COUNT()).FROM(
+						new Table(tableName,"META_DUMMY")));
+			}
+			else
+			{
+				result = jdbcConnection.query(SELECT_ROW_COUNT_ESTIMATE,tableName);
+			}
+			
+			try
+			{
+				if(result.next())
 				{
-					e.printStackTrace();
+					Object value = result.getObject(0);
+					if(value instanceof Number)
+					{
+						return (int)Math.min(((Number)value).longValue(),Integer.MAX_VALUE);
+					}
 				}
 			}
+			finally
+			{
+				result.close();
+			}
 		}
-		
-		Index[] indices = new Index[indexMap.size()];
-		int i = 0;
-		for(IndexInfo indexInfo : indexMap.keySet())
+		catch(Exception e)
 		{
-			Set<String> columnList = indexMap.get(indexInfo);
-			String[] indexColumns = columnList.toArray(new String[columnList.size()]);
-			indices[i++] = new Index(indexInfo.name,indexInfo.type,indexColumns);
+			e.printStackTrace();
 		}
 		
-		return new TableMetaData(table,columns,indices,count);
+		return UNKNOWN_ROW_COUNT;
 	}
 	
 	
@@ -355,14 +787,224 @@ public class H2JDBCMetaData extends JDBCMetaData
 	}
 	
 	
+	/**
+	 * @return a planner which merges schema changes per table and runs them
+	 *         as one batch
+	 */
+	public H2SchemaMigration createMigration()
+	{
+		return new H2SchemaMigration(this);
+	}
+	
+	
+	/**
+	 * A schema synchronization, e.g. one or more calls to the inherited
+	 * schema update methods of this metadata.
+	 */
+	public static interface SchemaSync
+	{
+		public void run() throws DBException;
+	}
+	
+	
+	/**
+	 * Runs a schema synchronization with merged DDL: while <code>sync</code>
+	 * runs, the DDL hooks of this thread (<code>createTable</code>,
+	 * <code>addColumn</code>, <code>alterColumn</code>,
+	 * <code>dropColumn</code>, <code>createIndex</code> and
+	 * <code>dropIndex</code>) don't write to the database but collect their
+	 * changes in one {@link H2SchemaMigration}, which is executed once
+	 * afterwards. The changes therefore aren't visible to <code>sync</code>
+	 * itself.
+	 * <p>
+	 * Without this method every hook writes its statement immediately.
+	 * 
+	 * @param jdbcConnection
+	 *            the connection to execute the migration with
+	 * @param monitor
+	 *            the progress monitor of the migration, may be
+	 *            <code>null</code>
+	 * @param sync
+	 *            the synchronization
+	 * @return the report of the migration
+	 * @throws DBException
+	 *             if the synchronization or the migration fails; in this case
+	 *             nothing collected is executed
+	 */
+	public H2MigrationReport synchronize(JDBCConnection jdbcConnection, ProgressMonitor monitor,
+			SchemaSync sync) throws DBException
+	{
+		if(recordingMigration.get() != null)
+		{
+			throw new DBException(this.dataSource,"A schema synchronization is already running.");
+		}
+		
+		H2SchemaMigration migration = createMigration();
+		recordingMigration.set(migration);
+		try
+		{
+			sync.run();
+		}
+		finally
+		{
+			recordingMigration.remove();
+		}
+		
+		return migration.execute(jdbcConnection,monitor);
+	}
+	
+	
+	/**
+	 * Compares the indices of existing tables with the database by their
+	 * definition, see {@link H2SchemaMigration#updateIndices(TableMetaData, TableMetaData)},
+	 * and drops and recreates the indices which differ, e.g. in the order or
+	 * the direction of their columns. Within
+	 * {@link #synchronize(JDBCConnection, ProgressMonitor, SchemaSync)} the
+	 * changes are added to the running migration, otherwise they are executed
+	 * immediately. {@link #synchronizeTables(TableMetaData...)} runs it for
+	 * all existing tables.
+	 * 
+	 * @param jdbcConnection
+	 *            the connection to use
+	 * @param tables
+	 *            the requested tables, which have to exist
+	 * @throws DBException
+	 *             if the existing indices can't be read or changed
+	 */
+	public void synchronizeIndices(JDBCConnection jdbcConnection, TableMetaData... tables)
+			throws DBException
+	{
+		H2SchemaMigration migration = getRecordingMigration();
+		boolean immediate = migration == null;
+		if(immediate)
+		{
+			migration = createMigration();
+		}
+		
+		Connection connection = jdbcConnection.getConnection();
+		try
+		{
+			DatabaseMetaData meta = connection.getMetaData();
+			for(TableMetaData table : tables)
+			{
+				migration.updateIndices(table,
+						getTableMetaData(jdbcConnection,meta,INDICES,table.getTableInfo()));
+			}
+		}
+		catch(SQLException e)
+		{
+			throw new DBException(this.dataSource,e);
+		}
+		finally
+		{
+			H2JDBCConnection.releaseConnection(jdbcConnection,connection);
+		}
+		
+		if(immediate)
+		{
+			migration.execute(jdbcConnection);
+		}
+	}
+	
+	
+	/**
+	 * Runs the inherited synchronization, which compares indices by their
+	 * name and columns only, and then
+	 * {@link #synchronizeIndices(JDBCConnection, TableMetaData...)} for the
+	 * tables which existed before, so indices which differ in the order or
+	 * the direction of their columns are recreated as well.
+	 */
+	@Override
+	public void synchronizeTables(TableMetaData... tables) throws DBException
+	{
+		JDBCConnection jdbcConnection = (JDBCConnection)this.dataSource.openConnection();
+		try
+		{
+			Set<String> tableNames = new HashSet<>();
+			Result result = jdbcConnection.query(SELECT_TABLE_NAMES);
+			try
+			{
+				while(result.next())
+				{
+					tableNames.add((String)result.getObject(0));
+				}
+			}
+			finally
+			{
+				result.close();
+			}
+			
+			List<TableMetaData> existing = new ArrayList<>();
+			for(TableMetaData table : tables)
+			{
+				if(tableNames.contains(table.getTableInfo().getName()))
+				{
+					existing.add(table);
+				}
+			}
+			
+			super.synchronizeTables(tables);
+			
+			if(existing.size() > 0)
+			{
+				synchronizeIndices(jdbcConnection,
+						existing.toArray(new TableMetaData[existing.size()]));
+			}
+		}
+		finally
+		{
+			jdbcConnection.close();
+		}
+	}
+	
+	
+	/**
+	 * @return the migration collecting the DDL of the current thread, or
+	 *         <code>null</code> if the hooks write immediately
+	 */
+	private H2SchemaMigration getRecordingMigration()
+	{
+		H2SchemaMigration migration = recordingMigration.get();
+		return migration != null && migration.getMetaData().dataSource == this.dataSource
+				? migration : null;
+	}
+	
+	
 	@Override
 	protected void createTable(JDBCConnection jdbcConnection, TableMetaData table)
 			throws DBException, SQLException
 	{
+		H2SchemaMigration migration = getRecordingMigration();
+		if(migration != null)
+		{
+			migration.createTable(table);
+			return;
+		}
+		
 		List params = new ArrayList();
+		jdbcConnection.write(getCreateTableStatement(table,params),false,params.toArray());
+		for(Index index : table.getIndices())
+		{
+			if(!isInlineIndex(index))
+			{
+				jdbcConnection.write(getCreateIndexStatement(table,index));
+			}
+		}
+		invalidateCache(table);
+	}
+	
+	
+	String getCreateTableStatement(TableMetaData table, List params) throws DBException
+	{
+		H2TableStorage storage = table instanceof H2TableMetaData ? ((H2TableMetaData)table)
+				.getStorage() : null;
+		if(storage == null)
+		{
+			storage = getH2DataSource().getTableStorage();
+		}
 		
 		StringBuilder sb = new StringBuilder();
-		sb.append("CREATE CACHED TABLE ");
+		sb.append(storage.getCreatePrefix());
 		appendEscapedName(table.getTableInfo().getName(),sb);
 		sb.append(" (");
 		
@@ -382,7 +1024,7 @@ public class H2JDBCMetaData extends JDBCMetaData
 		
 		for(Index index : table.getIndices())
 		{
-			if(isSupported(index))
+			if(isInlineIndex(index))
 			{
 				sb.append(", ");
 				appendIndexDefinition(index,sb);
@@ -390,8 +1032,9 @@ public class H2JDBCMetaData extends JDBCMetaData
 		}
 		
 		sb.append(")");
+		sb.append(storage.getCreateSuffix());
 		
-		jdbcConnection.write(sb.toString(),false,params.toArray());
+		return sb.toString();
 	}
 	
 	
@@ -400,22 +1043,66 @@ public class H2JDBCMetaData extends JDBCMetaData
 			ColumnMetaData column, ColumnMetaData columnBefore, ColumnMetaData columnAfter)
 			throws DBException, SQLException
 	{
-		List params = new ArrayList();
+		ColumnMetaData before = columnAfter != null ? columnBefore : null;
+		H2SchemaMigration migration = getRecordingMigration();
+		if(migration != null)
+		{
+			migration.addColumn(table,column,before);
+			return;
+		}
 		
+		List params = new ArrayList();
+		List<ColumnMetaData> columns = new ArrayList<>();
+		columns.add(column);
+		jdbcConnection.write(getAddColumnsStatement(table,columns,before,params),false,
+				params.toArray());
+		invalidateCache(table);
+	}
+	
+	
+	/**
+	 * Creates one <code>ALTER TABLE ... ADD</code> statement for one or more
+	 * columns, which are inserted before <code>columnBefore</code> or at the
+	 * end.
+	 */
+	String getAddColumnsStatement(TableMetaData table, List<ColumnMetaData> columns,
+			ColumnMetaData columnBefore, List params)
+	{
 		StringBuilder sb = new StringBuilder();
 		sb.append("ALTER TABLE ");
 		appendEscapedName(table.getTableInfo().getName(),sb);
-		sb.append(" ADD COLUMN ");
-		appendEscapedName(column.getName(),sb);
-		sb.append(" ");
-		appendColumnDefinition(column,sb,params);
-		if(columnAfter != null)
+		if(columns.size() == 1)
+		{
+			sb.append(" ADD COLUMN ");
+			appendColumn(columns.get(0),sb,params);
+		}
+		else
+		{
+			sb.append(" ADD (");
+			for(int i = 0; i < columns.size(); i++)
+			{
+				if(i > 0)
+				{
+					sb.append(", ");
+				}
+				appendColumn(columns.get(i),sb,params);
+			}
+			sb.append(")");
+		}
+		if(columnBefore != null)
 		{
 			sb.append(" BEFORE ");
 			appendEscapedName(columnBefore.getName(),sb);
 		}
-		
-		jdbcConnection.write(sb.toString(),false,params.toArray());
+		return sb.toString();
+	}
+	
+	
+	private void appendColumn(ColumnMetaData column, StringBuilder sb, List params)
+	{
+		appendEscapedName(column.getName(),sb);
+		sb.append(" ");
+		appendColumnDefinition(column,sb,params);
 	}
 	
 	
@@ -423,8 +1110,23 @@ public class H2JDBCMetaData extends JDBCMetaData
 	protected void alterColumn(JDBCConnection jdbcConnection, TableMetaData table,
 			ColumnMetaData column, ColumnMetaData existing) throws DBException, SQLException
 	{
-		List params = new ArrayList();
+		H2SchemaMigration migration = getRecordingMigration();
+		if(migration != null)
+		{
+			migration.alterColumn(table,column,existing);
+			return;
+		}
 		
+		List params = new ArrayList();
+		jdbcConnection.write(getAlterColumnStatement(table,column,existing,params),false,
+				params.toArray());
+		invalidateCache(table);
+	}
+	
+	
+	String getAlterColumnStatement(TableMetaData table, ColumnMetaData column,
+			ColumnMetaData existing, List params)
+	{
 		StringBuilder sb = new StringBuilder();
 		sb.append("ALTER TABLE ");
 		appendEscapedName(table.getTableInfo().getName(),sb);
@@ -432,8 +1134,7 @@ public class H2JDBCMetaData extends JDBCMetaData
 		appendEscapedName(existing.getName(),sb);
 		sb.append(" ");
 		appendColumnDefinition(column,sb,params);
-		
-		jdbcConnection.write(sb.toString(),false,params.toArray());
+		return sb.toString();
 	}
 	
 
@@ -504,52 +1205,7 @@ public class H2JDBCMetaData extends JDBCMetaData
 			if(!(defaultValue == null && !column.isNullable()))
 			{
 				sb.append(" DEFAULT ");
-				if(defaultValue == null)
-				{
-					sb.append("NULL");
-				}
-				else if(defaultValue instanceof String)
-				{
-					sb.append('\'');
-					for(char ch : defaultValue.toString().toCharArray())
-					{
-						switch(ch)
-						{
-							case '\'':
-								sb.append('\'');
-							break;
-						}
-						sb.append(ch);
-					}
-					sb.append('\'');
-				}
-				else if(defaultValue instanceof Date)
-				{
-					DateFormat format = null;
-					switch(type)
-					{
-						case DATE:
-							format = dateFormat;
-						break;
-						case TIME:
-							format = timeFormat;
-						break;
-						case TIMESTAMP:
-							format = timestampFormat;
-						break;
-					}
-					
-					if(format != null)
-					{
-						sb.append('\'');
-						sb.append(format.format((Date)defaultValue));
-						sb.append('\'');
-					}
-				}
-				else
-				{
-					sb.append(defaultValue.toString());
-				}
+				H2LiteralRenderer.appendLiteral(defaultValue,type,sb);
 			}
 		}
 		
@@ -572,14 +1228,40 @@ public class H2JDBCMetaData extends JDBCMetaData
 	@Override
 	protected void dropColumn(JDBCConnection jdbcConnection, TableMetaData table,
 			ColumnMetaData column) throws DBException, SQLException
+	{
+		H2SchemaMigration migration = getRecordingMigration();
+		if(migration != null)
+		{
+			migration.dropColumn(table,column);
+			return;
+		}
+		
+		List<ColumnMetaData> columns = new ArrayList<>();
+		columns.add(column);
+		jdbcConnection.write(getDropColumnsStatement(table,columns));
+		invalidateCache(table);
+	}
+	
+	
+	/**
+	 * Creates one <code>ALTER TABLE ... DROP COLUMN</code> statement for one
+	 * or more columns.
+	 */
+	String getDropColumnsStatement(TableMetaData table, List<ColumnMetaData> columns)
 	{
 		StringBuilder sb = new StringBuilder();
 		sb.append("ALTER TABLE ");
 		appendEscapedName(table.getTableInfo().getName(),sb);
 		sb.append(" DROP COLUMN ");
-		appendEscapedName(column.getName(),sb);
-		
-		jdbcConnection.write(sb.toString());
+		for(int i = 0; i < columns.size(); i++)
+		{
+			if(i > 0)
+			{
+				sb.append(", ");
+			}
+			appendEscapedName(columns.get(i).getName(),sb);
+		}
+		return sb.toString();
 	}
 	
 	
@@ -587,24 +1269,68 @@ public class H2JDBCMetaData extends JDBCMetaData
 	protected void createIndex(JDBCConnection jdbcConnection, TableMetaData table, Index index)
 			throws DBException, SQLException
 	{
-		if(!isSupported(index))
+		H2SchemaMigration migration = getRecordingMigration();
+		if(migration != null)
 		{
+			migration.createIndex(table,index);
 			return;
 		}
 		
+		jdbcConnection.write(getCreateIndexStatement(table,index));
+		invalidateCache(table);
+	}
+	
+	
+	/**
+	 * Primary keys and unique constraints are added as constraints, all
+	 * other indices are created with <code>CREATE INDEX</code>.
+	 */
+	String getCreateIndexStatement(TableMetaData table, Index index) throws DBException
+	{
 		StringBuilder sb = new StringBuilder();
-		sb.append("ALTER TABLE ");
-		appendEscapedName(table.getTableInfo().getName(),sb);
-		sb.append(" ADD ");
-		appendIndexDefinition(index,sb);
-		
-		jdbcConnection.write(sb.toString());
+		if(isInlineIndex(index))
+		{
+			sb.append("ALTER TABLE ");
+			appendEscapedName(table.getTableInfo().getName(),sb);
+			sb.append(" ADD ");
+			appendIndexDefinition(index,sb);
+		}
+		else
+		{
+			sb.append("CREATE ");
+			if(index.getType() == IndexType.UNIQUE)
+			{
+				sb.append("UNIQUE ");
+			}
+			sb.append(H2Index.getKind(index).getKeyword());
+			sb.append("INDEX ");
+			appendEscapedName(getValidIndexName(table,index),sb);
+			sb.append(" ON ");
+			appendEscapedName(table.getTableInfo().getName(),sb);
+			appendIndexColumns(index,sb);
+		}
+		return sb.toString();
 	}
 	
 	
-	private boolean isSupported(Index index)
+	/**
+	 * @return <code>true</code> if the index can be defined within
+	 *         <code>CREATE TABLE</code>, i.e. if it is a primary key, which
+	 *         is written as <code>PRIMARY KEY HASH</code> for the hash kind,
+	 *         or a plain unique constraint
+	 */
+	boolean isInlineIndex(Index index)
 	{
-		return index.getType() != IndexType.NORMAL;
+		switch(index.getType())
+		{
+			case PRIMARY_KEY:
+				return true;
+			case UNIQUE:
+				return H2Index.getKind(index) == H2Index.Kind.DEFAULT
+						&& !(index instanceof H2Index && ((H2Index)index).hasDescendingColumns());
+			default:
+				return false;
+		}
 	}
 	
 	
@@ -615,6 +1341,19 @@ public class H2JDBCMetaData extends JDBCMetaData
 			case PRIMARY_KEY:
 			{
 				sb.append("PRIMARY KEY");
+				switch(H2Index.getKind(index))
+				{
+					case HASH:
+						sb.append(" HASH");
+					break;
+					
+					case SPATIAL:
+						throw new DBException(this.dataSource,
+								"A primary key can't be a spatial index.");
+					
+					default:
+					break;
+				}
 			}
 			break;
 			
@@ -627,10 +1366,16 @@ public class H2JDBCMetaData extends JDBCMetaData
 			default:
 			{
 				throw new DBException(this.dataSource,
-						"Only primary keys and unique indices are supported.");
+						"Only primary keys and unique indices can be defined as constraints.");
 			}
 		}
 		
+		appendIndexColumns(index,sb);
+	}
+	
+	
+	private void appendIndexColumns(Index index, StringBuilder sb)
+	{
 		sb.append(" (");
 		String[] columns = index.getColumns();
 		for(int i = 0; i < columns.length; i++)
@@ -640,6 +1385,10 @@ public class H2JDBCMetaData extends JDBCMetaData
 				sb.append(", ");
 			}
 			appendEscapedName(columns[i],sb);
+			if(H2Index.isDescending(index,i))
+			{
+				sb.append(" DESC");
+			}
 		}
 		sb.append(")");
 	}
@@ -648,8 +1397,42 @@ public class H2JDBCMetaData extends JDBCMetaData
 	@Override
 	protected void dropIndex(JDBCConnection jdbcConnection, TableMetaData table, Index index)
 			throws DBException, SQLException
+	{
+		H2SchemaMigration migration = getRecordingMigration();
+		if(migration != null)
+		{
+			migration.dropIndex(table,index);
+			return;
+		}
+		
+		jdbcConnection.write(getDropIndexStatement(table,index));
+		invalidateCache(table);
+	}
+	
+	
+	/**
+	 * A unique index is dropped with its constraint. H2 reports the index of
+	 * a unique constraint by the index name, e.g.
+	 * <code>CONSTRAINT_INDEX_5</code>, so the name of the owning constraint
+	 * is looked up; a unique index without a constraint is dropped with
+	 * <code>DROP INDEX</code>.
+	 */
+	String getDropIndexStatement(TableMetaData table, Index index) throws DBException
 	{
 		StringBuilder sb = new StringBuilder();
+		String indexName = getValidIndexName(table,index);
+		String constraintName = null;
+		if(index.getType() == IndexType.UNIQUE && isInlineIndex(index))
+		{
+			constraintName = getUniqueConstraintName(table,indexName);
+		}
+		if(index.getType() != IndexType.PRIMARY_KEY && constraintName == null)
+		{
+			sb.append("DROP INDEX ");
+			appendEscapedName(indexName,sb);
+			return sb.toString();
+		}
+		
 		sb.append("ALTER TABLE ");
 		appendEscapedName(table.getTableInfo().getName(),sb);
 		sb.append(" DROP ");
@@ -661,17 +1444,65 @@ public class H2JDBCMetaData extends JDBCMetaData
 		else
 		{
 			sb.append("CONSTRAINT ");
-			appendEscapedName(getValidIndexName(index),sb);
+			appendEscapedName(constraintName,sb);
 		}
 		
-		jdbcConnection.write(sb.toString());
+		return sb.toString();
 	}
 	
 	
-	private String getValidIndexName(Index index)
+	/**
+	 * @return the name of the unique constraint of <code>table</code> which
+	 *         is named <code>indexName</code> or owns the index
+	 *         <code>indexName</code>, or <code>null</code>
+	 */
+	private String getUniqueConstraintName(TableMetaData table, String indexName)
+			throws DBException
+	{
+		JDBCConnection jdbcConnection = (JDBCConnection)this.dataSource.openConnection();
+		try
+		{
+			Result result = jdbcConnection.query(SELECT_UNIQUE_CONSTRAINT,
+					table.getTableInfo().getName(),indexName,indexName);
+			try
+			{
+				return result.next() ? (String)result.getObject(0) : null;
+			}
+			finally
+			{
+				result.close();
+			}
+		}
+		finally
+		{
+			jdbcConnection.close();
+		}
+	}
+	
+	
+	void invalidateCache(TableMetaData table)
+	{
+		H2MetaDataCache cache = getH2DataSource().getMetaDataCache();
+		if(cache != null)
+		{
+			cache.invalidate(table.getTableInfo().getName());
+		}
+		getH2DataSource().getDbmsAdaptor().getRetrospectionAccessor().clearCache();
+	}
+	
+	
+	private String getValidIndexName(TableMetaData table, Index index)
 	{
 		String name = index.getName();
-
+		if(name == null || name.length() == 0)
+		{
+			StringBuilder sb = new StringBuilder(table.getTableInfo().getName());
+			for(String column : index.getColumns())
+			{
+				sb.append('_').append(column);
+			}
+			name = sb.append("_IDX").toString();
+		}
 		return name;
 	}
 }
@@ -0,0 +1,262 @@
+/*
+ * SqlEngine Database Adapter H2 - XAPI SqlEngine Database Adapter for H2
+ * Copyright © 2003 XDEV Software (https://xdev.software)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package xdev.db.h2.jdbc;
+
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.OffsetTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.temporal.ChronoField;
+import java.time.temporal.TemporalAccessor;
+import java.util.Date;
+import java.util.UUID;
+
+import xdev.db.DataType;
+
+
+/**
+ * Renders values as H2 SQL literals, e.g. for the <code>DEFAULT</code>
+ * clause of a column definition.
+ * <p>
+ * The literals are written straight into the target {@link StringBuilder}.
+ * All formatters are immutable, so the renderer may be used by parallel
+ * threads.
+ */
+final class H2LiteralRenderer
+{
+	private static final char[]				HEX_DIGITS			= "0123456789abcdef"
+																		.toCharArray();
+	
+	private static final DateTimeFormatter	TIME_FORMAT			= new DateTimeFormatterBuilder()
+																		.appendPattern("HH:mm:ss")
+																		.optionalStart()
+																		.appendFraction(ChronoField.NANO_OF_SECOND,0,9,true)
+																		.optionalEnd()
+																		.toFormatter();
+	
+	private static final DateTimeFormatter	TIMESTAMP_FORMAT	= new DateTimeFormatterBuilder()
+																		.append(DateTimeFormatter.ISO_LOCAL_DATE)
+																		.appendLiteral(' ')
+																		.append(TIME_FORMAT)
+																		.toFormatter();
+	
+	private static final DateTimeFormatter	OFFSET_TIME_FORMAT	= new DateTimeFormatterBuilder()
+																		.append(TIME_FORMAT)
+																		.appendOffset("+HH:MM","+00:00")
+																		.toFormatter();
+	
+	private static final DateTimeFormatter	OFFSET_TIMESTAMP_FORMAT	= new DateTimeFormatterBuilder()
+																		.append(TIMESTAMP_FORMAT)
+																		.appendOffset("+HH:MM","+00:00")
+																		.toFormatter();
+	
+	
+	private H2LiteralRenderer()
+	{
+	}
+	
+	
+	/**
+	 * Appends <code>value</code> as a literal of a column of type
+	 * <code>type</code>.
+	 * <p>
+	 * Dates are rendered as <code>DATE</code>, <code>TIME</code> or
+	 * <code>TIMESTAMP</code> literal depending on <code>type</code>, values
+	 * with an offset as <code>TIMESTAMP WITH TIME ZONE</code> or
+	 * <code>TIME WITH TIME ZONE</code>, binary data as <code>X'..'</code>.
+	 * 
+	 * @param value
+	 *            the value, may be <code>null</code>
+	 * @param type
+	 *            the type of the column, may be <code>null</code>
+	 * @param sb
+	 *            the target
+	 * @return <code>sb</code>
+	 */
+	static StringBuilder appendLiteral(final Object value, final DataType type,
+			final StringBuilder sb)
+	{
+		if(value == null)
+		{
+			return sb.append("NULL");
+		}
+		
+		if(value instanceof String || value instanceof Character)
+		{
+			return H2Dbms.appendStringLiteral(value.toString(),sb);
+		}
+		
+		if(value instanceof Boolean)
+		{
+			return sb.append(((Boolean)value).booleanValue() ? "TRUE" : "FALSE");
+		}
+		
+		if(value instanceof Number)
+		{
+			return appendNumber((Number)value,type,sb);
+		}
+		
+		if(value instanceof byte[])
+		{
+			return appendBinary((byte[])value,sb);
+		}
+		
+		if(value instanceof UUID)
+		{
+			if(isCharacterType(type))
+			{
+				return H2Dbms.appendStringLiteral(value.toString(),sb);
+			}
+			return sb.append("UUID '").append(value.toString()).append('\'');
+		}
+		
+		if(value instanceof Date)
+		{
+			return appendDate((Date)value,type,sb);
+		}
+		
+		if(value instanceof LocalDate)
+		{
+			return appendTemporal("DATE '",DateTimeFormatter.ISO_LOCAL_DATE,(LocalDate)value,sb);
+		}
+		
+		if(value instanceof LocalTime)
+		{
+			return appendTemporal("TIME '",TIME_FORMAT,(LocalTime)value,sb);
+		}
+		
+		if(value instanceof LocalDateTime)
+		{
+			return appendTemporal("TIMESTAMP '",TIMESTAMP_FORMAT,(LocalDateTime)value,sb);
+		}
+		
+		if(value instanceof OffsetDateTime || value instanceof ZonedDateTime)
+		{
+			return appendTemporal("TIMESTAMP WITH TIME ZONE '",OFFSET_TIMESTAMP_FORMAT,
+					(TemporalAccessor)value,sb);
+		}
+		
+		if(value instanceof Instant)
+		{
+			return appendTemporal("TIMESTAMP WITH TIME ZONE '",OFFSET_TIMESTAMP_FORMAT,
+					((Instant)value).atOffset(ZoneOffset.UTC),sb);
+		}
+		
+		if(value instanceof OffsetTime)
+		{
+			return appendTemporal("TIME WITH TIME ZONE '",OFFSET_TIME_FORMAT,(OffsetTime)value,
+					sb);
+		}
+		
+		if(isCharacterType(type))
+		{
+			return H2Dbms.appendStringLiteral(value.toString(),sb);
+		}
+		
+		return sb.append(value.toString());
+	}
+	
+	
+	private static StringBuilder appendNumber(final Number value, final DataType type,
+			final StringBuilder sb)
+	{
+		if(value instanceof BigDecimal)
+		{
+			return sb.append(((BigDecimal)value).toPlainString());
+		}
+		
+		if(value instanceof Double || value instanceof Float)
+		{
+			final double d = value.doubleValue();
+			if(Double.isNaN(d) || Double.isInfinite(d))
+			{
+				return sb.append("CAST('").append(d).append("' AS DOUBLE PRECISION)");
+			}
+			if(type == DataType.NUMERIC || type == DataType.DECIMAL)
+			{
+				return sb.append(new BigDecimal(value.toString()).toPlainString());
+			}
+			return value instanceof Float ? sb.append(value.floatValue()) : sb.append(d);
+		}
+		
+		if(value instanceof Long || value instanceof Integer || value instanceof Short
+				|| value instanceof Byte)
+		{
+			return sb.append(value.longValue());
+		}
+		
+		return sb.append(value.toString());
+	}
+	
+	
+	private static StringBuilder appendBinary(final byte[] value, final StringBuilder sb)
+	{
+		sb.ensureCapacity(sb.length() + value.length * 2 + 3);
+		sb.append("X'");
+		for(final byte b : value)
+		{
+			sb.append(HEX_DIGITS[(b >> 4) & 0xf]);
+			sb.append(HEX_DIGITS[b & 0xf]);
+		}
+		return sb.append('\'');
+	}
+	
+	
+	private static StringBuilder appendDate(final Date value, final DataType type,
+			final StringBuilder sb)
+	{
+		final LocalDateTime dateTime = value instanceof java.sql.Timestamp ? ((java.sql.Timestamp)value)
+				.toLocalDateTime() : LocalDateTime.ofInstant(Instant.ofEpochMilli(value.getTime()),
+				ZoneId.systemDefault());
+		
+		if(type == DataType.DATE)
+		{
+			return appendTemporal("DATE '",DateTimeFormatter.ISO_LOCAL_DATE,dateTime,sb);
+		}
+		if(type == DataType.TIME)
+		{
+			return appendTemporal("TIME '",TIME_FORMAT,dateTime,sb);
+		}
+		return appendTemporal("TIMESTAMP '",TIMESTAMP_FORMAT,dateTime,sb);
+	}
+	
+	
+	private static StringBuilder appendTemporal(final String prefix,
+			final DateTimeFormatter format, final TemporalAccessor value, final StringBuilder sb)
+	{
+		sb.append(prefix);
+		format.formatTo(value,sb);
+		return sb.append('\'');
+	}
+	
+	
+	private static boolean isCharacterType(final DataType type)
+	{
+		return type == DataType.CHAR || type == DataType.VARCHAR || type == DataType.LONGVARCHAR
+				|| type == DataType.CLOB;
+	}
+}
@@ -0,0 +1,250 @@
+/*
+ * SqlEngine Database Adapter H2 - XAPI SqlEngine Database Adapter for H2
+ * Copyright © 2003 XDEV Software (https://xdev.software)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package xdev.db.h2.jdbc;
+
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import xdev.db.DBException;
+import xdev.db.Result;
+import xdev.db.jdbc.JDBCConnection;
+
+
+/**
+ * Maintenance operations on the statistics and the storage of an H2
+ * database.
+ */
+final class H2Maintenance
+{
+	private static final String	SELECT_SELECTIVITY	= "SELECT COLUMN_NAME, SELECTIVITY "
+															+ "FROM INFORMATION_SCHEMA.COLUMNS "
+															+ "WHERE TABLE_SCHEMA = COALESCE(?, CURRENT_SCHEMA) "
+															+ "AND TABLE_NAME = ? "
+															+ "ORDER BY ORDINAL_POSITION";
+	
+	private static final String	SELECT_INDICES		= "SELECT I.INDEX_NAME, I.INDEX_TYPE_NAME, "
+															+ "C.COLUMN_NAME, C.ORDERING_SPECIFICATION "
+															+ "FROM INFORMATION_SCHEMA.INDEXES I "
+															+ "JOIN INFORMATION_SCHEMA.INDEX_COLUMNS C "
+															+ "ON C.INDEX_SCHEMA = I.INDEX_SCHEMA "
+															+ "AND C.INDEX_NAME = I.INDEX_NAME "
+															+ "WHERE I.TABLE_SCHEMA = COALESCE(?, CURRENT_SCHEMA) "
+															+ "AND I.TABLE_NAME = ? "
+															+ "AND I.IS_GENERATED = FALSE "
+															+ "ORDER BY I.INDEX_NAME, C.ORDINAL_POSITION";
+	
+	private static final String	SELECT_FILE_SIZE	= "SELECT SETTING_VALUE "
+															+ "FROM INFORMATION_SCHEMA.SETTINGS "
+															+ "WHERE SETTING_NAME = 'info.FILE_SIZE'";
+	
+	
+	private H2Maintenance()
+	{
+	}
+	
+	
+	/**
+	 * Runs <code>ANALYZE TABLE</code> on a table and reads back the updated
+	 * selectivity of its columns.
+	 * 
+	 * @param jdbcConnection
+	 *            the connection to use
+	 * @param schema
+	 *            the schema of the table, <code>null</code> for the current
+	 *            one
+	 * @param tableName
+	 *            the table to analyze
+	 * @param sampleSize
+	 *            the number of rows to sample, <code>0</code> for all rows
+	 * @return the selectivity per column name, in column order, from 0 (all
+	 *         values equal) to 100 (all values distinct)
+	 * @throws DBException
+	 *             if the statement fails
+	 */
+	static Map<String, Integer> updateSelectivity(final JDBCConnection jdbcConnection,
+			final String schema, final String tableName, final int sampleSize) throws DBException
+	{
+		final StringBuilder sb = new StringBuilder("ANALYZE TABLE ");
+		H2Dbms.appendIdentifier(schema,tableName,sb);
+		sb.append(" SAMPLE_SIZE ").append(Math.max(sampleSize,0));
+		jdbcConnection.write(sb.toString());
+		
+		final Map<String, Integer> selectivity = new LinkedHashMap<>();
+		final Result result = jdbcConnection.query(SELECT_SELECTIVITY,schema,tableName);
+		try
+		{
+			while(result.next())
+			{
+				final Object value = result.getObject(1);
+				selectivity.put(String.valueOf(result.getObject(0)),
+						value instanceof Number ? ((Number)value).intValue() : null);
+			}
+		}
+		finally
+		{
+			result.close();
+		}
+		return selectivity;
+	}
+	
+	
+	/**
+	 * Recreates the secondary indices of a table, i.e. all indices which
+	 * have been created with <code>CREATE INDEX</code> and not for a
+	 * constraint, and writes a checkpoint afterwards.
+	 * <p>
+	 * Each index is first created again under a temporary name, then the old
+	 * one is dropped and the new one renamed. If the new index can't be
+	 * created, the old one is kept; if the old one can't be dropped, the new
+	 * one is dropped again. H2 compacts the store
+	 * online in the background; a full compaction is only possible with
+	 * <code>SHUTDOWN COMPACT</code>, which isn't done here.
+	 * 
+	 * @param jdbcConnection
+	 *            the connection to use
+	 * @param schema
+	 *            the schema of the table, <code>null</code> for the current
+	 *            one
+	 * @param tableName
+	 *            the table
+	 * @return the report of the rebuild
+	 * @throws DBException
+	 *             if a statement fails
+	 */
+	static H2IndexRebuildReport rebuildIndices(final JDBCConnection jdbcConnection,
+			final String schema, final String tableName) throws DBException
+	{
+		final long start = System.currentTimeMillis();
+		final long fileSizeBefore = getFileSize(jdbcConnection);
+		
+		final List<String> names = new ArrayList<>();
+		final List<String> types = new ArrayList<>();
+		final List<String> definitions = new ArrayList<>();
+		final Result result = jdbcConnection.query(SELECT_INDICES,schema,tableName);
+		try
+		{
+			StringBuilder sb = null;
+			String indexName = null;
+			while(result.next())
+			{
+				final String name = String.valueOf(result.getObject(0));
+				if(!name.equals(indexName))
+				{
+					if(sb != null)
+					{
+						definitions.add(sb.append(')').toString());
+					}
+					indexName = name;
+					names.add(name);
+					types.add(String.valueOf(result.getObject(1)));
+					
+					sb = new StringBuilder(" ON ");
+					H2Dbms.appendIdentifier(schema,tableName,sb);
+					sb.append(" (");
+				}
+				else
+				{
+					sb.append(", ");
+				}
+				H2Dbms.appendIdentifier(String.valueOf(result.getObject(2)),sb);
+				if("DESC".equals(result.getObject(3)))
+				{
+					sb.append(" DESC");
+				}
+			}
+			if(sb != null)
+			{
+				definitions.add(sb.append(')').toString());
+			}
+		}
+		finally
+		{
+			result.close();
+		}
+		
+		for(int i = 0; i < names.size(); i++)
+		{
+			rebuildIndex(jdbcConnection,schema,names.get(i),types.get(i),definitions.get(i));
+		}
+		
+		jdbcConnection.write("CHECKPOINT SYNC");
+		
+		return new H2IndexRebuildReport(tableName,names.toArray(new String[names.size()]),
+				fileSizeBefore,getFileSize(jdbcConnection),System.currentTimeMillis() - start);
+	}
+	
+	
+	/**
+	 * @param definition
+	 *            the index definition after the name, i.e.
+	 *            <code> ON table (columns)</code>
+	 */
+	private static void rebuildIndex(final JDBCConnection jdbcConnection, final String schema,
+			final String name, final String type, final String definition) throws DBException
+	{
+		final String tempName = name + "_REBUILD";
+		
+		StringBuilder sb = new StringBuilder("CREATE ");
+		sb.append(type);
+		sb.append(' ');
+		H2Dbms.appendIdentifier(schema,tempName,sb);
+		sb.append(definition);
+		jdbcConnection.write(sb.toString());
+		
+		sb = new StringBuilder("DROP INDEX ");
+		H2Dbms.appendIdentifier(schema,name,sb);
+		try
+		{
+			jdbcConnection.write(sb.toString());
+		}
+		catch(final DBException e)
+		{
+			sb = new StringBuilder("DROP INDEX ");
+			H2Dbms.appendIdentifier(schema,tempName,sb);
+			jdbcConnection.write(sb.toString());
+			throw e;
+		}
+		
+		sb = new StringBuilder("ALTER INDEX ");
+		H2Dbms.appendIdentifier(schema,tempName,sb);
+		sb.append(" RENAME TO ");
+		H2Dbms.appendIdentifier(name,sb);
+		jdbcConnection.write(sb.toString());
+	}
+	
+	
+	private static long getFileSize(final JDBCConnection jdbcConnection) throws DBException
+	{
+		final Result result = jdbcConnection.query(SELECT_FILE_SIZE);
+		try
+		{
+			if(result.next())
+			{
+				return Long.parseLong(String.valueOf(result.getObject(0)));
+			}
+		}
+		finally
+		{
+			result.close();
+		}
+		return H2IndexRebuildReport.UNKNOWN_FILE_SIZE;
+	}
+}
@@ -0,0 +1,250 @@
+/*
+ * SqlEngine Database Adapter H2 - XAPI SqlEngine Database Adapter for H2
+ * Copyright © 2003 XDEV Software (https://xdev.software)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package xdev.db.h2.jdbc;
+
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import xdev.db.ColumnMetaData;
+import xdev.db.DBException;
+import xdev.db.DBMetaData;
+import xdev.db.DBMetaData.TableMetaData;
+import xdev.db.Index;
+import xdev.db.Result;
+import xdev.db.jdbc.JDBCConnection;
+
+
+/**
+ * Bounded LRU cache of the table metadata of one data source.
+ * <p>
+ * Entries are dropped when this adapter changes a table itself. Changes made
+ * by other clients are detected per table by a change marker read from
+ * <code>INFORMATION_SCHEMA.TABLES</code>, which is compared at most once per
+ * {@link #CHECK_INTERVAL} milliseconds; only the entries of changed tables
+ * are dropped. The marker consists of the table's
+ * <code>LAST_MODIFICATION</code> and object id. H2 advances
+ * <code>LAST_MODIFICATION</code> with every data change and with every
+ * schema change which rebuilds the table, e.g. adding a column, changing a
+ * column type or creating an index. Changes which only touch the schema
+ * objects, e.g. renaming a column, aren't detected; {@link #clear()} the
+ * cache after such changes by other clients.
+ * <p>
+ * The metadata is copied when it is put into and taken from the cache, so
+ * changes of a caller, e.g. with {@link ColumnMetaData#setDefaultValue(Object)},
+ * don't reach the cached entry or other callers.
+ */
+public class H2MetaDataCache
+{
+	/**
+	 * Minimum time in milliseconds between two change marker checks.
+	 */
+	public static final long				CHECK_INTERVAL	= 1000;
+
+	/**
+	 * The change marker of a table as an expression on
+	 * <code>INFORMATION_SCHEMA.TABLES</code>.
+	 */
+	static final String						CHANGE_MARKER	= "LAST_MODIFICATION || ':' || "
+																	+ "DB_OBJECT_ID('TABLE', TABLE_SCHEMA, TABLE_NAME)";
+
+	private static final String				SELECT_MARKERS	= "SELECT TABLE_NAME, " + CHANGE_MARKER
+																	+ " FROM INFORMATION_SCHEMA.TABLES "
+																	+ "WHERE TABLE_SCHEMA = CURRENT_SCHEMA";
+
+	private final Map<String, Entry>		entries;
+	private Map<String, String>				markers			= new HashMap<>();
+	private long							lastCheck;
+
+
+	public H2MetaDataCache(final int maxSize)
+	{
+		this.entries = new LinkedHashMap<String, Entry>(16,0.75f,true)
+		{
+			@Override
+			protected boolean removeEldestEntry(final Map.Entry<String, Entry> eldest)
+			{
+				return size() > maxSize;
+			}
+		};
+	}
+
+
+	/**
+	 * Reads the change markers of all tables and drops the entries of the
+	 * tables which have been changed since they were cached.
+	 *
+	 * @param jdbcConnection
+	 *            the connection to read the markers with
+	 * @throws DBException
+	 *             if the markers can't be read
+	 */
+	public void validate(final JDBCConnection jdbcConnection) throws DBException
+	{
+		synchronized(this)
+		{
+			if(System.currentTimeMillis() - this.lastCheck < CHECK_INTERVAL)
+			{
+				return;
+			}
+		}
+
+		final Map<String, String> markers = new HashMap<>();
+		final Result result = jdbcConnection.query(SELECT_MARKERS);
+		try
+		{
+			while(result.next())
+			{
+				markers.put(String.valueOf(result.getObject(0)),
+						String.valueOf(result.getObject(1)));
+			}
+		}
+		finally
+		{
+			result.close();
+		}
+
+		synchronized(this)
+		{
+			for(final Iterator<Entry> it = this.entries.values().iterator(); it.hasNext();)
+			{
+				final Entry entry = it.next();
+				final String marker = markers.get(entry.tableName);
+				if(marker == null || !marker.equals(entry.marker))
+				{
+					it.remove();
+				}
+			}
+			this.markers = markers;
+			this.lastCheck = System.currentTimeMillis();
+		}
+	}
+
+
+	/**
+	 * @return the cached metadata, or <code>null</code> if the table isn't
+	 *         cached with the requested flags
+	 */
+	public TableMetaData get(final String tableName, final int flags)
+	{
+		final Entry entry;
+		synchronized(this)
+		{
+			entry = this.entries.get(createKey(tableName,flags));
+		}
+		return entry != null ? copy(entry.tableMetaData) : null;
+	}
+
+
+	/**
+	 * Caches the metadata of a table together with the table's last read
+	 * change marker. Metadata including the row count isn't cached because
+	 * the count changes with every write, not only with the schema.
+	 */
+	public void put(final String tableName, final int flags, final TableMetaData tableMetaData)
+	{
+		if((flags & DBMetaData.ROW_COUNT) == 0)
+		{
+			final TableMetaData copy = copy(tableMetaData);
+			synchronized(this)
+			{
+				this.entries.put(createKey(tableName,flags),
+						new Entry(tableName,this.markers.get(tableName),copy));
+			}
+		}
+	}
+
+
+	/**
+	 * Removes all cached entries of a table. The change markers are read
+	 * again on the next {@link #validate(JDBCConnection)}, so the metadata
+	 * read after the change is cached with the new marker of the table.
+	 */
+	public synchronized void invalidate(final String tableName)
+	{
+		final String prefix = tableName + '#';
+		for(final Iterator<String> it = this.entries.keySet().iterator(); it.hasNext();)
+		{
+			if(it.next().startsWith(prefix))
+			{
+				it.remove();
+			}
+		}
+		this.lastCheck = 0;
+	}
+
+
+	/**
+	 * Removes all cached entries.
+	 */
+	public synchronized void clear()
+	{
+		this.entries.clear();
+		this.markers = new HashMap<>();
+		this.lastCheck = 0;
+	}
+
+
+	private static TableMetaData copy(final TableMetaData tableMetaData)
+	{
+		final ColumnMetaData[] columns = tableMetaData.getColumns().clone();
+		for(int i = 0; i < columns.length; i++)
+		{
+			final ColumnMetaData column = columns[i];
+			columns[i] = new ColumnMetaData(column.getTable(),column.getName(),
+					column.getCaption(),column.getType(),column.getLength(),column.getScale(),
+					column.getDefaultValue(),column.isNullable(),column.isAutoIncrement());
+		}
+		final Index[] indices = tableMetaData.getIndices().clone();
+
+		if(tableMetaData instanceof H2TableMetaData)
+		{
+			final H2TableMetaData h2TableMetaData = (H2TableMetaData)tableMetaData;
+			return new H2TableMetaData(tableMetaData.getTableInfo(),columns,indices,
+					tableMetaData.getRowCount(),h2TableMetaData.isRowCountEstimated(),
+					h2TableMetaData.getStorage());
+		}
+		return new TableMetaData(tableMetaData.getTableInfo(),columns,indices,
+				tableMetaData.getRowCount());
+	}
+
+
+	private static String createKey(final String tableName, final int flags)
+	{
+		return tableName + '#' + flags;
+	}
+
+
+
+	private static final class Entry
+	{
+		final String		tableName;
+		final String		marker;
+		final TableMetaData	tableMetaData;
+
+
+		Entry(final String tableName, final String marker, final TableMetaData tableMetaData)
+		{
+			this.tableName = tableName;
+			this.marker = marker;
+			this.tableMetaData = tableMetaData;
+		}
+	}
+}
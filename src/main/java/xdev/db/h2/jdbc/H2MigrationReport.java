@@ -0,0 +1,105 @@
+/*
+ * SqlEngine Database Adapter H2 - XAPI SqlEngine Database Adapter for H2
+ * Copyright © 2003 XDEV Software (https://xdev.software)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package xdev.db.h2.jdbc;
+
+
+/**
+ * Result of
+ * {@link H2SchemaMigration#execute(xdev.db.jdbc.JDBCConnection, xdev.util.ProgressMonitor)}.
+ */
+public class H2MigrationReport
+{
+	private final int		tableCount;
+	private final int		changeCount;
+	private final int		statementCount;
+	private final long		duration;
+	private final boolean	canceled;
+	
+	
+	public H2MigrationReport(final int tableCount, final int changeCount,
+			final int statementCount, final long duration)
+	{
+		this(tableCount,changeCount,statementCount,duration,false);
+	}
+	
+	
+	public H2MigrationReport(final int tableCount, final int changeCount,
+			final int statementCount, final long duration, final boolean canceled)
+	{
+		this.tableCount = tableCount;
+		this.changeCount = changeCount;
+		this.statementCount = statementCount;
+		this.duration = duration;
+		this.canceled = canceled;
+	}
+	
+	
+	/**
+	 * @return the number of changed tables
+	 */
+	public int getTableCount()
+	{
+		return this.tableCount;
+	}
+	
+	
+	/**
+	 * @return the number of requested changes
+	 */
+	public int getChangeCount()
+	{
+		return this.changeCount;
+	}
+	
+	
+	/**
+	 * @return the number of executed statements after merging
+	 */
+	public int getStatementCount()
+	{
+		return this.statementCount;
+	}
+	
+	
+	/**
+	 * @return the duration of the migration in milliseconds
+	 */
+	public long getDuration()
+	{
+		return this.duration;
+	}
+	
+	
+	/**
+	 * @return <code>true</code> if the migration has been canceled before
+	 *         all tables were changed
+	 */
+	public boolean isCanceled()
+	{
+		return this.canceled;
+	}
+	
+	
+	@Override
+	public String toString()
+	{
+		return this.changeCount + " changes on " + this.tableCount + " tables in "
+				+ this.statementCount + " statements, " + this.duration + " ms"
+				+ (this.canceled ? " (canceled)" : "");
+	}
+}
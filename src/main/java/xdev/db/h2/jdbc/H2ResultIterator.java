@@ -0,0 +1,178 @@
+/*
+ * SqlEngine Database Adapter H2 - XAPI SqlEngine Database Adapter for H2
+ * Copyright © 2003 XDEV Software (https://xdev.software)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package xdev.db.h2.jdbc;
+
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import xdev.db.DBException;
+import xdev.db.jdbc.JDBCConnection;
+
+
+/**
+ * Forward-only iterator over the rows of a query, which reads the rows from
+ * the database in chunks of the statement's fetch size instead of loading
+ * the whole result.
+ * <p>
+ * The statement and the result set are closed and the connection is
+ * released when the last row has been read, or by {@link #close()} if the
+ * iteration stops early. Errors while
+ * reading are thrown as {@link RuntimeException}s wrapping a
+ * {@link DBException}.
+ */
+public class H2ResultIterator implements Iterator<Object[]>, AutoCloseable
+{
+	private final H2JDBCDataSource	dataSource;
+	private final JDBCConnection	jdbcConnection;
+	private final Connection		connection;
+	private final PreparedStatement	statement;
+	private final ResultSet			resultSet;
+	private final int				columnCount;
+	private Object[]				next;
+	private boolean					closed;
+	
+	
+	/**
+	 * @param connection
+	 *            the connection of the statement, obtained from
+	 *            <code>jdbcConnection</code>, it is released on
+	 *            {@link #close()}
+	 */
+	H2ResultIterator(final H2JDBCDataSource dataSource, final JDBCConnection jdbcConnection,
+			final Connection connection, final PreparedStatement statement) throws SQLException
+	{
+		this.dataSource = dataSource;
+		this.jdbcConnection = jdbcConnection;
+		this.connection = connection;
+		this.statement = statement;
+		this.resultSet = statement.executeQuery();
+		this.columnCount = this.resultSet.getMetaData().getColumnCount();
+	}
+	
+	
+	/**
+	 * @return the column labels of the result
+	 */
+	public String[] getColumnLabels()
+	{
+		try
+		{
+			final String[] labels = new String[this.columnCount];
+			for(int i = 0; i < labels.length; i++)
+			{
+				labels[i] = this.resultSet.getMetaData().getColumnLabel(i + 1);
+			}
+			return labels;
+		}
+		catch(SQLException e)
+		{
+			throw new RuntimeException(new DBException(this.dataSource,e));
+		}
+	}
+	
+	
+	@Override
+	public boolean hasNext()
+	{
+		if(this.next == null && !this.closed)
+		{
+			try
+			{
+				if(this.resultSet.next())
+				{
+					final Object[] row = new Object[this.columnCount];
+					for(int i = 0; i < row.length; i++)
+					{
+						row[i] = this.resultSet.getObject(i + 1);
+					}
+					this.next = row;
+				}
+				else
+				{
+					close();
+				}
+			}
+			catch(SQLException e)
+			{
+				close();
+				throw new RuntimeException(new DBException(this.dataSource,e));
+			}
+		}
+		return this.next != null;
+	}
+	
+	
+	@Override
+	public Object[] next()
+	{
+		if(!hasNext())
+		{
+			throw new NoSuchElementException();
+		}
+		final Object[] row = this.next;
+		this.next = null;
+		return row;
+	}
+	
+	
+	/**
+	 * @return a sequential stream of the remaining rows, closing the stream
+	 *         closes this iterator
+	 */
+	public Stream<Object[]> stream()
+	{
+		return StreamSupport.stream(
+				Spliterators.spliteratorUnknownSize(this,Spliterator.ORDERED | Spliterator.NONNULL),
+				false).onClose(this::close);
+	}
+	
+	
+	@Override
+	public void close()
+	{
+		if(this.closed)
+		{
+			return;
+		}
+		this.closed = true;
+		this.next = null;
+		
+		try
+		{
+			this.resultSet.close();
+			this.statement.close();
+		}
+		catch(SQLException e)
+		{
+			e.printStackTrace();
+		}
+		finally
+		{
+			H2JDBCConnection.releaseConnection(this.jdbcConnection,this.connection);
+		}
+	}
+}
@@ -18,20 +18,42 @@
 package xdev.db.h2.jdbc;
 
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 import com.xdev.jadoth.sqlengine.dbms.standard.StandardRetrospectionAccessor;
 import com.xdev.jadoth.sqlengine.exceptions.SQLEngineException;
 import com.xdev.jadoth.sqlengine.internal.tables.SqlIndex;
 import com.xdev.jadoth.sqlengine.internal.tables.SqlTableIdentity;
 
+import xdev.db.DBException;
+import xdev.db.Result;
+import xdev.db.jdbc.JDBCConnection;
+
 
 /**
- * The Class Hsql20RetrospectionAccessor.
+ * The Class H2RetrospectionAccessor.
+ * <p>
+ * The indices loaded by {@link #loadIndices(SqlTableIdentity)} are cached
+ * per table and validated with the same change marker as the
+ * {@link H2MetaDataCache}, at most once per
+ * {@link H2MetaDataCache#CHECK_INTERVAL} milliseconds. Within that interval
+ * and for changes the marker doesn't detect, e.g. renamed index columns,
+ * the cache can serve stale indices; {@link #clearCache()} drops them. The
+ * column query is only created here and run by the sqlengine, so its rows
+ * aren't cached.
  */
 public class H2RetrospectionAccessor extends StandardRetrospectionAccessor<H2Dbms>
 {
+	private final H2Dbms							dbms;
+	
+	private final Map<SqlTableIdentity, CachedIndices>	indexCache	= new ConcurrentHashMap<>();
+	
 	
 	/**
-	 * Instantiates a new hsql20 retrospection accessor.
+	 * Instantiates a new h2 retrospection accessor.
 	 * 
 	 * @param dbmsadaptor
 	 *            the dbmsadaptor
@@ -39,6 +61,8 @@ public class H2RetrospectionAccessor extends StandardRetrospectionAccessor<H2Dbm
 	public H2RetrospectionAccessor(final H2Dbms dbmsadaptor)
 	{
 		super(dbmsadaptor);
+		
+		this.dbms = dbmsadaptor;
 	}
 	
 	
@@ -50,7 +74,14 @@ public class H2RetrospectionAccessor extends StandardRetrospectionAccessor<H2Dbm
 	@Override
 	public String createSelect_INFORMATION_SCHEMA_COLUMNS(final SqlTableIdentity table)
 	{
-		throw new RuntimeException("Retrospection not implemented yet!");
+		final StringBuilder sb = new StringBuilder(512);
+		sb.append("SELECT TABLE_SCHEMA, TABLE_NAME, COLUMN_NAME, ORDINAL_POSITION, ");
+		sb.append("COLUMN_DEFAULT, IS_NULLABLE, DATA_TYPE, CHARACTER_MAXIMUM_LENGTH, ");
+		sb.append("NUMERIC_PRECISION, NUMERIC_SCALE, IS_IDENTITY ");
+		sb.append("FROM INFORMATION_SCHEMA.COLUMNS WHERE ");
+		appendTableCondition(table,sb,"");
+		sb.append(" ORDER BY ORDINAL_POSITION");
+		return sb.toString();
 	}
 	
 	
@@ -62,7 +93,14 @@ public class H2RetrospectionAccessor extends StandardRetrospectionAccessor<H2Dbm
 	@Override
 	public String createSelect_INFORMATION_SCHEMA_INDICES(final SqlTableIdentity table)
 	{
-		throw new RuntimeException("Retrospection not implemented yet!");
+		final StringBuilder sb = new StringBuilder(512);
+		sb.append("SELECT I.INDEX_NAME, I.INDEX_TYPE_NAME, C.COLUMN_NAME, C.IS_UNIQUE ");
+		sb.append("FROM INFORMATION_SCHEMA.INDEXES I ");
+		sb.append("JOIN INFORMATION_SCHEMA.INDEX_COLUMNS C ");
+		sb.append("ON C.INDEX_SCHEMA = I.INDEX_SCHEMA AND C.INDEX_NAME = I.INDEX_NAME WHERE ");
+		appendTableCondition(table,sb,"I.");
+		sb.append(" ORDER BY I.INDEX_NAME, C.ORDINAL_POSITION");
+		return sb.toString();
 	}
 	
 	
@@ -75,7 +113,155 @@ public class H2RetrospectionAccessor extends StandardRetrospectionAccessor<H2Dbm
 	@Override
 	public SqlIndex[] loadIndices(final SqlTableIdentity table) throws SQLEngineException
 	{
-		throw new RuntimeException("Retrospection not implemented yet!");
+		final CachedIndices cached = this.indexCache.get(table);
+		final long now = System.currentTimeMillis();
+		if(cached != null && now - cached.checked < H2MetaDataCache.CHECK_INTERVAL)
+		{
+			return cached.indices;
+		}
+		
+		final H2JDBCDataSource dataSource = this.dbms.dataSource;
+		if(dataSource == null)
+		{
+			throw new IllegalStateException("No data source to read the indices from");
+		}
+		
+		try
+		{
+			final JDBCConnection jdbcConnection = (JDBCConnection)dataSource.openConnection();
+			try
+			{
+				final String marker = queryChangeMarker(jdbcConnection,table);
+				if(cached != null && marker.equals(cached.marker))
+				{
+					cached.checked = now;
+					return cached.indices;
+				}
+				
+				final SqlIndex[] indices = queryIndices(jdbcConnection,table);
+				this.indexCache.put(table,new CachedIndices(indices,marker,now));
+				return indices;
+			}
+			finally
+			{
+				jdbcConnection.close();
+			}
+		}
+		catch(final SQLEngineException e)
+		{
+			throw e;
+		}
+		catch(final Exception e)
+		{
+			throw new SQLEngineException(e);
+		}
+	}
+	
+	
+	/**
+	 * Drops all cached indices, they are read again on the next request.
+	 */
+	public void clearCache()
+	{
+		this.indexCache.clear();
+	}
+	
+	
+	private static String queryChangeMarker(final JDBCConnection jdbcConnection,
+			final SqlTableIdentity table) throws DBException
+	{
+		final StringBuilder sb = new StringBuilder("SELECT ");
+		sb.append(H2MetaDataCache.CHANGE_MARKER);
+		sb.append(" FROM INFORMATION_SCHEMA.TABLES WHERE ");
+		appendTableCondition(table,sb,"");
+		final Result result = jdbcConnection.query(sb.toString());
+		try
+		{
+			return String.valueOf(result.next() ? result.getObject(0) : null);
+		}
+		finally
+		{
+			result.close();
+		}
+	}
+	
+	
+	private SqlIndex[] queryIndices(final JDBCConnection jdbcConnection,
+			final SqlTableIdentity table) throws DBException
+	{
+		final List<SqlIndex> indices = new ArrayList<>();
+		final Result result = jdbcConnection.query(createSelect_INFORMATION_SCHEMA_INDICES(table));
+		try
+		{
+			String indexName = null;
+			boolean unique = false;
+			final List<String> columns = new ArrayList<>();
+			while(result.next())
+			{
+				final String name = String.valueOf(result.getObject(0));
+				if(!name.equals(indexName))
+				{
+					if(indexName != null)
+					{
+						indices.add(createIndex(table,indexName,unique,columns));
+					}
+					indexName = name;
+					unique = Boolean.TRUE.equals(result.getObject(3));
+					columns.clear();
+				}
+				columns.add(String.valueOf(result.getObject(2)));
+			}
+			if(indexName != null)
+			{
+				indices.add(createIndex(table,indexName,unique,columns));
+			}
+		}
+		finally
+		{
+			result.close();
+		}
+		return indices.toArray(new SqlIndex[indices.size()]);
+	}
+	
+	
+	private static SqlIndex createIndex(final SqlTableIdentity table, final String name,
+			final boolean unique, final List<String> columns)
+	{
+		return new SqlIndex(name,table,unique,columns.toArray());
 	}
 	
+	
+	private static void appendTableCondition(final SqlTableIdentity table, final StringBuilder sb,
+			final String prefix)
+	{
+		final String schema = table.sql().schema;
+		sb.append(prefix).append("TABLE_SCHEMA = ");
+		if(schema == null)
+		{
+			sb.append("CURRENT_SCHEMA");
+		}
+		else
+		{
+			H2Dbms.appendStringLiteral(schema,sb);
+		}
+		sb.append(" AND ").append(prefix).append("TABLE_NAME = ");
+		H2Dbms.appendStringLiteral(table.sql().name,sb);
+	}
+	
+	
+	
+	private static final class CachedIndices
+	{
+		final SqlIndex[]	indices;
+		final String		marker;
+		volatile long		checked;
+		
+		
+		CachedIndices(final SqlIndex[] indices, final String marker, final long checked)
+		{
+			this.indices = indices;
+			this.marker = marker;
+			this.checked = checked;
+		}
+	}
 }
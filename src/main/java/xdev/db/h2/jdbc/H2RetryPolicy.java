@@ -0,0 +1,116 @@
+/*
+ * SqlEngine Database Adapter H2 - XAPI SqlEngine Database Adapter for H2
+ * Copyright © 2003 XDEV Software (https://xdev.software)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package xdev.db.h2.jdbc;
+
+
+import java.sql.SQLException;
+import java.util.concurrent.ThreadLocalRandom;
+
+
+/**
+ * Retry with exponential backoff for statements which failed with a
+ * transient error, see {@link H2ExceptionParser#isTransient(SQLException)}.
+ * <p>
+ * The delay before retry <code>n</code> (starting at 0) is
+ * <code>initialBackoff * 2^n</code>, capped at <code>maxBackoff</code> and
+ * randomized between half and the full value, so concurrent clients which
+ * failed on the same lock don't retry at the same time.
+ */
+public class H2RetryPolicy
+{
+	private final int	maxRetries;
+	private final long	initialBackoff;
+	private final long	maxBackoff;
+	
+	
+	/**
+	 * @param maxRetries
+	 *            the maximum number of retries, <code>0</code> disables
+	 *            retrying
+	 * @param initialBackoff
+	 *            the delay before the first retry in milliseconds
+	 * @param maxBackoff
+	 *            the maximum delay in milliseconds
+	 */
+	public H2RetryPolicy(final int maxRetries, final long initialBackoff, final long maxBackoff)
+	{
+		this.maxRetries = Math.max(maxRetries,0);
+		this.initialBackoff = Math.max(initialBackoff,0);
+		this.maxBackoff = Math.max(maxBackoff,this.initialBackoff);
+	}
+	
+	
+	public int getMaxRetries()
+	{
+		return this.maxRetries;
+	}
+	
+	
+	/**
+	 * @param t
+	 *            the failure
+	 * @param retry
+	 *            the number of retries done so far
+	 * @return <code>true</code> if the failure is transient and the retries
+	 *         aren't exhausted
+	 */
+	public boolean shouldRetry(final Throwable t, final int retry)
+	{
+		if(retry >= this.maxRetries)
+		{
+			return false;
+		}
+		final SQLException e = H2ExceptionParser.findSQLException(t);
+		return e != null && H2ExceptionParser.isTransient(e);
+	}
+	
+	
+	/**
+	 * @param retry
+	 *            the number of retries done so far
+	 * @return the delay before the next retry in milliseconds
+	 */
+	public long getBackoff(final int retry)
+	{
+		final long backoff = Math.min(this.initialBackoff << Math.min(retry,30),this.maxBackoff);
+		return backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+	}
+	
+	
+	/**
+	 * Waits before the next retry.
+	 * 
+	 * @param retry
+	 *            the number of retries done so far
+	 * @return <code>false</code> if the thread has been interrupted, the
+	 *         interrupt flag is restored
+	 */
+	public boolean awaitRetry(final int retry)
+	{
+		try
+		{
+			Thread.sleep(getBackoff(retry));
+			return true;
+		}
+		catch(final InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+}
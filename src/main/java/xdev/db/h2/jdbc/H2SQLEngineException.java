@@ -0,0 +1,57 @@
+/*
+ * SqlEngine Database Adapter H2 - XAPI SqlEngine Database Adapter for H2
+ * Copyright © 2003 XDEV Software (https://xdev.software)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package xdev.db.h2.jdbc;
+
+
+import java.sql.SQLException;
+
+import com.xdev.jadoth.sqlengine.exceptions.SQLEngineException;
+
+
+/**
+ * Base of the classified H2 exceptions created by {@link H2ExceptionParser}.
+ */
+public class H2SQLEngineException extends SQLEngineException
+{
+	private final int		errorCode;
+	private final String	sqlState;
+	
+	
+	public H2SQLEngineException(final SQLException cause)
+	{
+		super(cause);
+		
+		this.errorCode = cause.getErrorCode();
+		this.sqlState = cause.getSQLState();
+	}
+	
+	
+	/**
+	 * @return H2's error code, see <code>org.h2.api.ErrorCode</code>
+	 */
+	public int getErrorCode()
+	{
+		return this.errorCode;
+	}
+	
+	
+	public String getSQLState()
+	{
+		return this.sqlState;
+	}
+}
@@ -0,0 +1,402 @@
+/*
+ * SqlEngine Database Adapter H2 - XAPI SqlEngine Database Adapter for H2
+ * Copyright © 2003 XDEV Software (https://xdev.software)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package xdev.db.h2.jdbc;
+
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import xdev.db.ColumnMetaData;
+import xdev.db.DBException;
+import xdev.db.DBMetaData.TableMetaData;
+import xdev.db.Index;
+import xdev.db.jdbc.JDBCConnection;
+import xdev.util.ProgressMonitor;
+
+
+/**
+ * Collects schema changes and runs them together.
+ * <p>
+ * The changes are grouped per table and merged where H2 allows it: all
+ * columns added at the same position go into one <code>ALTER TABLE ... ADD
+ * (...)</code>, all dropped columns into one <code>ALTER TABLE ... DROP
+ * COLUMN a, b</code>. Per table, indices are dropped first, then columns are
+ * dropped, added and altered, and finally indices are created. The
+ * statements of each table are sent to the database as one JDBC batch.
+ * <p>
+ * Every DDL statement is committed by H2 on its own. If statements of a
+ * batch fail, H2 still runs the remaining ones of the batch and reports the
+ * failures together; the successful statements stay applied and the
+ * changes of the failed and the remaining tables are kept, so they can be
+ * inspected with {@link #getStatements()}.
+ * 
+ * @see H2JDBCMetaData#createMigration()
+ * @see H2JDBCMetaData#synchronize(JDBCConnection, ProgressMonitor,
+ *      H2JDBCMetaData.SchemaSync)
+ */
+public class H2SchemaMigration
+{
+	private final H2JDBCMetaData				metaData;
+	private final Map<String, TableChanges>	tables	= new LinkedHashMap<>();
+	private int									changeCount;
+	
+	
+	H2SchemaMigration(final H2JDBCMetaData metaData)
+	{
+		this.metaData = metaData;
+	}
+	
+	
+	public H2SchemaMigration createTable(final TableMetaData table)
+	{
+		changes(table).create = true;
+		return this;
+	}
+	
+	
+	/**
+	 * @param columnBefore
+	 *            the column to insert the new one before, <code>null</code>
+	 *            to append it
+	 */
+	public H2SchemaMigration addColumn(final TableMetaData table, final ColumnMetaData column,
+			final ColumnMetaData columnBefore)
+	{
+		final TableChanges changes = changes(table);
+		final String key = columnBefore != null ? columnBefore.getName() : null;
+		List<ColumnMetaData> columns = changes.addColumns.get(key);
+		if(columns == null)
+		{
+			columns = new ArrayList<>();
+			changes.addColumns.put(key,columns);
+			changes.addColumnsBefore.put(key,columnBefore);
+		}
+		columns.add(column);
+		return this;
+	}
+	
+	
+	public H2SchemaMigration alterColumn(final TableMetaData table, final ColumnMetaData column,
+			final ColumnMetaData existing)
+	{
+		changes(table).alterColumns.add(new ColumnMetaData[]{column,existing});
+		return this;
+	}
+	
+	
+	public H2SchemaMigration dropColumn(final TableMetaData table, final ColumnMetaData column)
+	{
+		changes(table).dropColumns.add(column);
+		return this;
+	}
+	
+	
+	/**
+	 * Adds an index, unless an index with the same definition is already
+	 * added for the table.
+	 */
+	public H2SchemaMigration createIndex(final TableMetaData table, final Index index)
+	{
+		final TableChanges changes = this.tables.get(table.getTableInfo().getName());
+		if(changes == null || !containsIndex(changes.createIndices,index))
+		{
+			changes(table).createIndices.add(index);
+		}
+		return this;
+	}
+	
+	
+	/**
+	 * Drops an index, unless it is already dropped.
+	 */
+	public H2SchemaMigration dropIndex(final TableMetaData table, final Index index)
+	{
+		final TableChanges changes = this.tables.get(table.getTableInfo().getName());
+		if(changes == null || !containsIndex(changes.dropIndices,index))
+		{
+			changes(table).dropIndices.add(index);
+		}
+		return this;
+	}
+	
+	
+	/**
+	 * Compares the indices of a table with the existing ones by their
+	 * definition, see {@link H2Index#equalsIndex(Index, Index)}. Existing
+	 * indices without an equal one in <code>table</code> are dropped, indices
+	 * of <code>table</code> without an equal existing one are created. An
+	 * index whose columns have been reordered is therefore recreated.
+	 * 
+	 * @param table
+	 *            the requested table
+	 * @param existing
+	 *            the table as it is in the database
+	 */
+	public H2SchemaMigration updateIndices(final TableMetaData table,
+			final TableMetaData existing)
+	{
+		final Index[] indices = table.getIndices();
+		final Index[] existingIndices = existing.getIndices();
+		for(final Index index : existingIndices)
+		{
+			if(!containsIndex(indices,index))
+			{
+				dropIndex(existing,index);
+			}
+		}
+		for(final Index index : indices)
+		{
+			if(!containsIndex(existingIndices,index))
+			{
+				createIndex(table,index);
+			}
+		}
+		return this;
+	}
+	
+	
+	private static boolean containsIndex(final Index[] indices, final Index index)
+	{
+		return containsIndex(Arrays.asList(indices),index);
+	}
+	
+	
+	private static boolean containsIndex(final List<Index> indices, final Index index)
+	{
+		for(final Index candidate : indices)
+		{
+			if(H2Index.equalsIndex(candidate,index))
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	
+	H2JDBCMetaData getMetaData()
+	{
+		return this.metaData;
+	}
+	
+	
+	/**
+	 * @return the number of collected changes
+	 */
+	public int getChangeCount()
+	{
+		return this.changeCount;
+	}
+	
+	
+	private TableChanges changes(final TableMetaData table)
+	{
+		this.changeCount++;
+		final String name = table.getTableInfo().getName();
+		TableChanges changes = this.tables.get(name);
+		if(changes == null)
+		{
+			changes = new TableChanges(table);
+			this.tables.put(name,changes);
+		}
+		changes.changeCount++;
+		return changes;
+	}
+	
+	
+	/**
+	 * @return the merged statements in execution order
+	 * @throws DBException
+	 *             if a change isn't supported
+	 */
+	public List<String> getStatements() throws DBException
+	{
+		final List<String> statements = new ArrayList<>();
+		for(final TableChanges changes : this.tables.values())
+		{
+			statements.addAll(getStatements(changes));
+		}
+		return statements;
+	}
+	
+	
+	private List<String> getStatements(final TableChanges changes) throws DBException
+	{
+		final List<String> statements = new ArrayList<>();
+		final List params = new ArrayList();
+		final TableMetaData table = changes.table;
+		if(changes.create)
+		{
+			statements.add(this.metaData.getCreateTableStatement(table,params));
+			for(final Index index : table.getIndices())
+			{
+				if(!this.metaData.isInlineIndex(index))
+				{
+					statements.add(this.metaData.getCreateIndexStatement(table,index));
+				}
+			}
+		}
+		for(final Index index : changes.dropIndices)
+		{
+			statements.add(this.metaData.getDropIndexStatement(table,index));
+		}
+		if(!changes.dropColumns.isEmpty())
+		{
+			statements.add(this.metaData.getDropColumnsStatement(table,changes.dropColumns));
+		}
+		for(final Map.Entry<String, List<ColumnMetaData>> entry : changes.addColumns.entrySet())
+		{
+			statements.add(this.metaData.getAddColumnsStatement(table,entry.getValue(),
+					changes.addColumnsBefore.get(entry.getKey()),params));
+		}
+		for(final ColumnMetaData[] alter : changes.alterColumns)
+		{
+			statements.add(this.metaData.getAlterColumnStatement(table,alter[0],alter[1],params));
+		}
+		for(final Index index : changes.createIndices)
+		{
+			statements.add(this.metaData.getCreateIndexStatement(table,index));
+		}
+		if(!params.isEmpty())
+		{
+			throw new DBException(this.metaData.getH2DataSource(),
+					"Parameterized statements can't be batched.");
+		}
+		return statements;
+	}
+	
+	
+	/**
+	 * Runs the collected changes, see
+	 * {@link #execute(JDBCConnection, ProgressMonitor)}.
+	 */
+	public H2MigrationReport execute(final JDBCConnection jdbcConnection) throws DBException
+	{
+		return execute(jdbcConnection,null);
+	}
+	
+	
+	/**
+	 * Runs the collected changes with one batch per table and clears them.
+	 * The progress is reported per table; if the monitor is canceled, the
+	 * remaining tables are skipped and their changes are kept.
+	 * 
+	 * @param jdbcConnection
+	 *            the connection to use
+	 * @param monitor
+	 *            the progress monitor, may be <code>null</code>
+	 * @return the timing report
+	 * @throws DBException
+	 *             if a statement fails
+	 */
+	public H2MigrationReport execute(final JDBCConnection jdbcConnection,
+			final ProgressMonitor monitor) throws DBException
+	{
+		final long start = System.currentTimeMillis();
+		final int changeCount = this.changeCount;
+		int tableCount = 0;
+		int statementCount = 0;
+		boolean canceled = false;
+		
+		if(monitor != null)
+		{
+			monitor.beginTask("Schema migration",this.tables.size());
+		}
+		
+		final Connection connection = jdbcConnection.getConnection();
+		try
+		{
+			for(final Iterator<TableChanges> it = this.tables.values().iterator(); it.hasNext();)
+			{
+				if(monitor != null && monitor.isCanceled())
+				{
+					canceled = true;
+					break;
+				}
+				
+				final TableChanges changes = it.next();
+				final List<String> statements = getStatements(changes);
+				try(Statement statement = connection.createStatement())
+				{
+					for(final String sql : statements)
+					{
+						statement.addBatch(sql);
+					}
+					statement.executeBatch();
+				}
+				finally
+				{
+					this.metaData.invalidateCache(changes.table);
+				}
+				
+				it.remove();
+				this.changeCount -= changes.changeCount;
+				tableCount++;
+				statementCount += statements.size();
+				
+				if(monitor != null)
+				{
+					monitor.worked(1);
+				}
+			}
+		}
+		catch(final SQLException e)
+		{
+			throw new DBException(this.metaData.getH2DataSource(),e);
+		}
+		finally
+		{
+			H2JDBCConnection.releaseConnection(jdbcConnection,connection);
+			if(monitor != null)
+			{
+				monitor.done();
+			}
+		}
+		
+		return new H2MigrationReport(tableCount,changeCount - this.changeCount,statementCount,
+				System.currentTimeMillis() - start,canceled);
+	}
+	
+	
+	
+	private static class TableChanges
+	{
+		final TableMetaData							table;
+		int											changeCount;
+		boolean										create;
+		final List<Index>							dropIndices		= new ArrayList<>();
+		final List<ColumnMetaData>					dropColumns		= new ArrayList<>();
+		final Map<String, List<ColumnMetaData>>	addColumns		= new LinkedHashMap<>();
+		final Map<String, ColumnMetaData>			addColumnsBefore	= new LinkedHashMap<>();
+		final List<ColumnMetaData[]>				alterColumns	= new ArrayList<>();
+		final List<Index>							createIndices	= new ArrayList<>();
+		
+		
+		TableChanges(final TableMetaData table)
+		{
+			this.table = table;
+		}
+	}
+}
@@ -0,0 +1,528 @@
+/*
+ * SqlEngine Database Adapter H2 - XAPI SqlEngine Database Adapter for H2
+ * Copyright © 2003 XDEV Software (https://xdev.software)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package xdev.db.h2.jdbc;
+
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import xdev.db.DBException;
+import xdev.db.DataType;
+import xdev.db.Index.IndexType;
+import xdev.db.Result;
+import xdev.db.jdbc.JDBCConnection;
+
+
+/**
+ * In-memory copy of the column and index definitions of all tables in the
+ * current schema, read with one query per <code>INFORMATION_SCHEMA</code>
+ * view instead of several metadata round trips per table.
+ */
+final class H2SchemaSnapshot
+{
+	private static final String						SELECT_COLUMNS	= "SELECT TABLE_NAME, COLUMN_NAME, DATA_TYPE, DECLARED_DATA_TYPE, "
+																		+ "CHARACTER_MAXIMUM_LENGTH, NUMERIC_PRECISION, NUMERIC_SCALE, "
+																		+ "DATETIME_PRECISION, IS_NULLABLE, IS_IDENTITY, COLUMN_DEFAULT "
+																		+ "FROM INFORMATION_SCHEMA.COLUMNS "
+																		+ "WHERE TABLE_SCHEMA = CURRENT_SCHEMA "
+																		+ "ORDER BY TABLE_NAME, ORDINAL_POSITION";
+	
+	private static final String						SELECT_INDICES	= "SELECT C.TABLE_NAME, C.INDEX_NAME, C.COLUMN_NAME, C.IS_UNIQUE, "
+																		+ "TC.CONSTRAINT_TYPE, I.INDEX_TYPE_NAME, C.ORDERING_SPECIFICATION "
+																		+ "FROM INFORMATION_SCHEMA.INDEX_COLUMNS C "
+																		+ "JOIN INFORMATION_SCHEMA.INDEXES I "
+																		+ "ON I.INDEX_SCHEMA = C.INDEX_SCHEMA "
+																		+ "AND I.INDEX_NAME = C.INDEX_NAME "
+																		+ "LEFT JOIN INFORMATION_SCHEMA.TABLE_CONSTRAINTS TC "
+																		+ "ON TC.INDEX_SCHEMA = C.INDEX_SCHEMA "
+																		+ "AND TC.INDEX_NAME = C.INDEX_NAME "
+																		+ "AND TC.CONSTRAINT_TYPE = 'PRIMARY KEY' "
+																		+ "WHERE C.TABLE_SCHEMA = CURRENT_SCHEMA "
+																		+ "ORDER BY C.TABLE_NAME, C.INDEX_NAME, C.ORDINAL_POSITION";
+	
+	private static final String						SELECT_TABLES	= "SELECT TABLE_NAME, ROW_COUNT_ESTIMATE, STORAGE_TYPE "
+																		+ "FROM INFORMATION_SCHEMA.TABLES "
+																		+ "WHERE TABLE_SCHEMA = CURRENT_SCHEMA";
+	
+	private final Map<String, List<ColumnInfo>>		columns			= new HashMap<>();
+	private final Map<String, List<IndexColumns>>	indices			= new HashMap<>();
+	private final Map<String, Long>					rowCounts		= new HashMap<>();
+	private final Map<String, H2TableStorage>		storages		= new HashMap<>();
+	
+	/**
+	 * Tables with at least one column type which can't be derived from the
+	 * <code>INFORMATION_SCHEMA</code>, they are read the conventional way.
+	 */
+	private final Set<String>						unsupported		= new HashSet<>();
+	
+	
+	private H2SchemaSnapshot()
+	{
+	}
+	
+	
+	/**
+	 * Reads the column and index definitions of all tables in the current
+	 * schema.
+	 *
+	 * @param jdbcConnection
+	 *            the connection to read from
+	 * @param evaluateDefaults
+	 *            <code>true</code> if the default value expressions should be
+	 *            evaluated, with one query for all tables or one per
+	 *            expression if that fails
+	 * @param rowCountEstimates
+	 *            <code>true</code> if the estimated row counts should be read
+	 * @return the snapshot
+	 * @throws DBException
+	 *             if the <code>INFORMATION_SCHEMA</code> can't be read
+	 */
+	static H2SchemaSnapshot load(JDBCConnection jdbcConnection, boolean evaluateDefaults,
+			boolean rowCountEstimates) throws DBException
+	{
+		H2SchemaSnapshot snapshot = new H2SchemaSnapshot();
+		snapshot.loadColumns(jdbcConnection);
+		snapshot.loadIndices(jdbcConnection);
+		if(evaluateDefaults)
+		{
+			snapshot.evaluateDefaults(jdbcConnection);
+		}
+		snapshot.loadTables(jdbcConnection,rowCountEstimates);
+		return snapshot;
+	}
+	
+	
+	private void loadColumns(JDBCConnection jdbcConnection) throws DBException
+	{
+		Result result = jdbcConnection.query(SELECT_COLUMNS);
+		try
+		{
+			while(result.next())
+			{
+				String tableName = getString(result,0);
+				DataType type = toDataType(getString(result,2),getString(result,3));
+				if(type == null)
+				{
+					this.unsupported.add(tableName);
+					continue;
+				}
+				
+				ColumnInfo column = new ColumnInfo();
+				column.name = getString(result,1);
+				column.type = type;
+				column.length = getLength(type,getLong(result,4),getLong(result,5),
+						getLong(result,7));
+				column.scale = getScale(type,getLong(result,6),getLong(result,7));
+				column.nullable = "YES".equals(getString(result,8));
+				column.autoIncrement = "YES".equals(getString(result,9));
+				column.defaultExpression = getString(result,10);
+				
+				List<ColumnInfo> list = this.columns.get(tableName);
+				if(list == null)
+				{
+					list = new ArrayList<>();
+					this.columns.put(tableName,list);
+				}
+				list.add(column);
+			}
+		}
+		finally
+		{
+			result.close();
+		}
+	}
+	
+	
+	private void loadIndices(JDBCConnection jdbcConnection) throws DBException
+	{
+		Result result = jdbcConnection.query(SELECT_INDICES);
+		try
+		{
+			IndexColumns current = null;
+			while(result.next())
+			{
+				String tableName = getString(result,0);
+				String indexName = getString(result,1);
+				if(current == null || !current.tableName.equals(tableName)
+						|| !current.name.equals(indexName))
+				{
+					current = new IndexColumns();
+					current.tableName = tableName;
+					current.name = indexName;
+					if(getString(result,4) != null)
+					{
+						current.type = IndexType.PRIMARY_KEY;
+					}
+					else if(Boolean.TRUE.equals(result.getObject(3)))
+					{
+						current.type = IndexType.UNIQUE;
+					}
+					else
+					{
+						current.type = IndexType.NORMAL;
+					}
+					current.kind = H2Index.Kind.forIndexTypeName(getString(result,5));
+					
+					List<IndexColumns> list = this.indices.get(tableName);
+					if(list == null)
+					{
+						list = new ArrayList<>();
+						this.indices.put(tableName,list);
+					}
+					list.add(current);
+				}
+				current.columns.add(getString(result,2));
+				current.descending.add("DESC".equals(getString(result,6)));
+			}
+		}
+		finally
+		{
+			result.close();
+		}
+	}
+	
+	
+	private void loadTables(JDBCConnection jdbcConnection, boolean rowCountEstimates)
+			throws DBException
+	{
+		Result result = jdbcConnection.query(SELECT_TABLES);
+		try
+		{
+			while(result.next())
+			{
+				String tableName = getString(result,0);
+				Long rowCount = getLong(result,1);
+				if(rowCountEstimates && rowCount != null)
+				{
+					this.rowCounts.put(tableName,rowCount);
+				}
+				H2TableStorage storage = H2TableStorage.forStorageType(getString(result,2));
+				if(storage != null)
+				{
+					this.storages.put(tableName,storage);
+				}
+			}
+		}
+		finally
+		{
+			result.close();
+		}
+	}
+	
+	
+	/**
+	 * Evaluates all default value expressions with a single
+	 * <code>SELECT</code>. If that fails, e.g. because of an expression which
+	 * is only valid in the context of its table, the expressions are
+	 * evaluated one by one, so only the failing ones stay unevaluated.
+	 */
+	private void evaluateDefaults(JDBCConnection jdbcConnection)
+	{
+		List<ColumnInfo> evaluated = new ArrayList<>();
+		StringBuilder sb = new StringBuilder();
+		for(List<ColumnInfo> list : this.columns.values())
+		{
+			for(ColumnInfo column : list)
+			{
+				if(column.autoIncrement)
+				{
+					continue;
+				}
+				if(column.defaultExpression == null)
+				{
+					column.defaultEvaluated = true;
+					continue;
+				}
+				if(column.defaultExpression.startsWith("?"))
+				{
+					continue;
+				}
+				
+				sb.append(sb.length() == 0 ? "SELECT " : ", ");
+				sb.append(column.defaultExpression);
+				sb.append(" AS \"D");
+				sb.append(evaluated.size());
+				sb.append("\"");
+				evaluated.add(column);
+			}
+		}
+		
+		if(evaluated.isEmpty())
+		{
+			return;
+		}
+		
+		try
+		{
+			Result result = jdbcConnection.query(sb.toString());
+			try
+			{
+				if(result.next())
+				{
+					for(int i = 0, c = evaluated.size(); i < c; i++)
+					{
+						ColumnInfo column = evaluated.get(i);
+						column.defaultValue = result.getObject(i);
+						column.defaultEvaluated = true;
+					}
+				}
+			}
+			finally
+			{
+				result.close();
+			}
+		}
+		catch(Exception e)
+		{
+			for(ColumnInfo column : evaluated)
+			{
+				evaluateDefault(jdbcConnection,column);
+			}
+		}
+	}
+	
+	
+	private static void evaluateDefault(JDBCConnection jdbcConnection, ColumnInfo column)
+	{
+		try
+		{
+			Result result = jdbcConnection.query("SELECT " + column.defaultExpression);
+			try
+			{
+				if(result.next())
+				{
+					column.defaultValue = result.getObject(0);
+					column.defaultEvaluated = true;
+				}
+			}
+			finally
+			{
+				result.close();
+			}
+		}
+		catch(Exception e)
+		{
+			H2JDBCConnection.logWarning("The default value of " + column.name
+					+ " can't be evaluated: " + column.defaultExpression,e);
+		}
+	}
+	
+	
+	/**
+	 * @return <code>true</code> if the table has been read completely and can
+	 *         be built from this snapshot
+	 */
+	boolean contains(String tableName)
+	{
+		return this.columns.containsKey(tableName) && !this.unsupported.contains(tableName);
+	}
+	
+	
+	List<ColumnInfo> getColumns(String tableName)
+	{
+		List<ColumnInfo> list = this.columns.get(tableName);
+		return list != null ? list : Collections.<ColumnInfo>emptyList();
+	}
+	
+	
+	List<IndexColumns> getIndices(String tableName)
+	{
+		List<IndexColumns> list = this.indices.get(tableName);
+		return list != null ? list : Collections.<IndexColumns>emptyList();
+	}
+	
+	
+	/**
+	 * @return the row count estimate of H2's table statistics, or
+	 *         <code>null</code> if it hasn't been read
+	 */
+	Long getRowCountEstimate(String tableName)
+	{
+		return this.rowCounts.get(tableName);
+	}
+	
+	
+	H2TableStorage getStorage(String tableName)
+	{
+		return this.storages.get(tableName);
+	}
+	
+	
+	/**
+	 * Maps the <code>INFORMATION_SCHEMA</code> type names to the types the
+	 * JDBC driver reports for the same column.
+	 *
+	 * @return the data type, or <code>null</code> if there is no exact match
+	 */
+	private static DataType toDataType(String dataType, String declaredDataType)
+	{
+		switch(dataType)
+		{
+			case "TINYINT":
+				return DataType.TINYINT;
+			case "SMALLINT":
+				return DataType.SMALLINT;
+			case "INTEGER":
+				return DataType.INTEGER;
+			case "BIGINT":
+				return DataType.BIGINT;
+			case "REAL":
+				return DataType.REAL;
+			case "DOUBLE PRECISION":
+				return DataType.DOUBLE;
+			case "NUMERIC":
+				return "DECIMAL".equals(declaredDataType) ? DataType.DECIMAL : DataType.NUMERIC;
+			case "CHARACTER":
+				return DataType.CHAR;
+			case "CHARACTER VARYING":
+			case "VARCHAR_IGNORECASE":
+				return DataType.VARCHAR;
+			case "CHARACTER LARGE OBJECT":
+				return DataType.CLOB;
+			case "BINARY":
+				return DataType.BINARY;
+			case "BINARY VARYING":
+				return DataType.VARBINARY;
+			case "BINARY LARGE OBJECT":
+				return DataType.BLOB;
+			case "DATE":
+				return DataType.DATE;
+			case "TIME":
+				return DataType.TIME;
+			case "TIMESTAMP":
+				return DataType.TIMESTAMP;
+			case "BOOLEAN":
+				return DataType.BOOLEAN;
+			default:
+				return null;
+		}
+	}
+	
+	
+	@SuppressWarnings("incomplete-switch")
+	private static int getLength(DataType type, Long characterLength, Long numericPrecision,
+			Long datetimePrecision)
+	{
+		switch(type)
+		{
+			case CHAR:
+			case VARCHAR:
+			case CLOB:
+			case BINARY:
+			case VARBINARY:
+			case BLOB:
+				return toInt(characterLength);
+			
+			case DATE:
+				return 10;
+			case TIME:
+				return 8 + getFractionLength(datetimePrecision);
+			case TIMESTAMP:
+				return 19 + getFractionLength(datetimePrecision);
+			case BOOLEAN:
+				return 1;
+		}
+		
+		return toInt(numericPrecision);
+	}
+	
+	
+	private static int getFractionLength(Long datetimePrecision)
+	{
+		int precision = toInt(datetimePrecision);
+		return precision > 0 ? precision + 1 : 0;
+	}
+	
+	
+	private static int getScale(DataType type, Long numericScale, Long datetimePrecision)
+	{
+		if(type == DataType.TIMESTAMP)
+		{
+			return toInt(datetimePrecision);
+		}
+		return type == DataType.NUMERIC || type == DataType.DECIMAL ? toInt(numericScale) : 0;
+	}
+	
+	
+	private static int toInt(Long value)
+	{
+		if(value == null)
+		{
+			return 0;
+		}
+		return (int)Math.min(value.longValue(),Integer.MAX_VALUE);
+	}
+	
+	
+	private static String getString(Result result, int col) throws DBException
+	{
+		Object value = result.getObject(col);
+		return value != null ? value.toString() : null;
+	}
+	
+	
+	private static Long getLong(Result result, int col) throws DBException
+	{
+		Object value = result.getObject(col);
+		return value instanceof Number ? ((Number)value).longValue() : null;
+	}
+	
+	
+	
+	static final class ColumnInfo
+	{
+		String		name;
+		DataType	type;
+		int			length;
+		int			scale;
+		boolean		nullable;
+		boolean		autoIncrement;
+		String		defaultExpression;
+		Object		defaultValue;
+		boolean		defaultEvaluated;
+	}
+	
+	
+	
+	static final class IndexColumns
+	{
+		String				tableName;
+		String				name;
+		IndexType			type;
+		H2Index.Kind		kind;
+		final List<String>	columns		= new ArrayList<>();
+		final List<Boolean>	descending	= new ArrayList<>();
+		
+		
+		H2Index toIndex(String indexName)
+		{
+			boolean[] desc = new boolean[this.descending.size()];
+			for(int i = 0; i < desc.length; i++)
+			{
+				desc[i] = this.descending.get(i);
+			}
+			return new H2Index(indexName,this.type,this.kind,
+					this.columns.toArray(new String[this.columns.size()]),desc);
+		}
+	}
+}
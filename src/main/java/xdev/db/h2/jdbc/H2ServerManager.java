@@ -0,0 +1,168 @@
+/*
+ * SqlEngine Database Adapter H2 - XAPI SqlEngine Database Adapter for H2
+ * Copyright © 2003 XDEV Software (https://xdev.software)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package xdev.db.h2.jdbc;
+
+
+import java.io.File;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.h2.tools.Server;
+
+
+/**
+ * Lifecycle of an H2 TCP server running inside this JVM.
+ * <p>
+ * H2 serves every TCP connection with its own thread, there is no thread
+ * pool to configure. Connections from the JVM the server runs in don't
+ * need to go through TCP: {@link #getLocalDatabase(String)} returns the path
+ * under which they open the same database directly.
+ * <p>
+ * The server doesn't create databases, clients can only open existing ones.
+ * A database which doesn't exist yet is created by the first connection
+ * from within this JVM.
+ */
+public class H2ServerManager
+{
+	private final int		port;
+	private final boolean	allowOthers;
+	private final String	baseDir;
+	
+	private Server			server;
+	private long			startTime;
+	private boolean			stopped;
+	
+	
+	/**
+	 * @param port
+	 *            the TCP port
+	 * @param allowOthers
+	 *            <code>true</code> to accept connections from other hosts
+	 * @param baseDir
+	 *            the directory the databases are located in
+	 */
+	public H2ServerManager(final int port, final boolean allowOthers, final String baseDir)
+	{
+		this.port = port;
+		this.allowOthers = allowOthers;
+		this.baseDir = new File(baseDir).getAbsolutePath();
+	}
+	
+	
+	/**
+	 * Starts the server, does nothing if it is already running.
+	 * 
+	 * @throws SQLException
+	 *             if the server can't be started, e.g. because the port is in
+	 *             use
+	 */
+	public synchronized void start() throws SQLException
+	{
+		if(isRunning())
+		{
+			return;
+		}
+		
+		final List<String> args = new ArrayList<>();
+		args.add("-tcpPort");
+		args.add(String.valueOf(this.port));
+		args.add("-baseDir");
+		args.add(this.baseDir);
+		if(this.allowOthers)
+		{
+			args.add("-tcpAllowOthers");
+		}
+		
+		this.server = Server.createTcpServer(args.toArray(new String[args.size()])).start();
+		this.startTime = System.currentTimeMillis();
+		this.stopped = false;
+	}
+	
+	
+	/**
+	 * Stops the server, open connections are closed. The server is only
+	 * started again by an explicit {@link #start()}.
+	 */
+	public synchronized void stop()
+	{
+		if(this.server != null)
+		{
+			this.server.stop();
+			this.server = null;
+			this.startTime = 0;
+		}
+		this.stopped = true;
+	}
+	
+	
+	/**
+	 * @return <code>true</code> if the server has been stopped by
+	 *         {@link #stop()} and not been started again
+	 */
+	public synchronized boolean isStopped()
+	{
+		return this.stopped;
+	}
+	
+	
+	public synchronized boolean isRunning()
+	{
+		return this.server != null && this.server.isRunning(false);
+	}
+	
+	
+	/**
+	 * @return the port the server listens on
+	 */
+	public synchronized int getPort()
+	{
+		return this.server != null ? this.server.getPort() : this.port;
+	}
+	
+	
+	/**
+	 * @return the URL of the running server, or <code>null</code>
+	 */
+	public synchronized String getURL()
+	{
+		return this.server != null ? this.server.getURL() : null;
+	}
+	
+	
+	/**
+	 * @return the time the server has been started at, <code>0</code> if it
+	 *         isn't running
+	 */
+	public synchronized long getStartTime()
+	{
+		return this.startTime;
+	}
+	
+	
+	/**
+	 * @param database
+	 *            the database name used in the <code>tcp://</code> url
+	 * @return the <code>file:</code> path to open the database directly
+	 *         within this JVM
+	 */
+	public String getLocalDatabase(final String database)
+	{
+		return "file:" + new File(this.baseDir,database).getPath();
+	}
+}
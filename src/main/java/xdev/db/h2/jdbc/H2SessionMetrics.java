@@ -0,0 +1,135 @@
+/*
+ * SqlEngine Database Adapter H2 - XAPI SqlEngine Database Adapter for H2
+ * Copyright © 2003 XDEV Software (https://xdev.software)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package xdev.db.h2.jdbc;
+
+
+import xdev.db.DBException;
+import xdev.db.Result;
+import xdev.db.jdbc.JDBCConnection;
+
+
+/**
+ * Connection and query counters of a database, read from
+ * <code>INFORMATION_SCHEMA.SESSIONS</code>.
+ */
+public class H2SessionMetrics
+{
+	private static final String	SELECT_SESSIONS	= "SELECT COUNT(*), COUNT(SERVER), "
+														+ "COUNT(EXECUTING_STATEMENT), COUNT(BLOCKER_ID), "
+														+ "DATEDIFF(MILLISECOND, MIN(EXECUTING_STATEMENT_START), "
+														+ "CURRENT_TIMESTAMP) "
+														+ "FROM INFORMATION_SCHEMA.SESSIONS";
+	
+	private final int			sessionCount;
+	private final int			remoteSessionCount;
+	private final int			executingCount;
+	private final int			blockedCount;
+	private final long			longestExecutionTime;
+	
+	
+	public H2SessionMetrics(final int sessionCount, final int remoteSessionCount,
+			final int executingCount, final int blockedCount, final long longestExecutionTime)
+	{
+		this.sessionCount = sessionCount;
+		this.remoteSessionCount = remoteSessionCount;
+		this.executingCount = executingCount;
+		this.blockedCount = blockedCount;
+		this.longestExecutionTime = longestExecutionTime;
+	}
+	
+	
+	/**
+	 * Reads the current metrics of the database.
+	 * 
+	 * @param jdbcConnection
+	 *            a connection to the database, which is counted itself
+	 * @return the metrics
+	 * @throws DBException
+	 *             if the sessions can't be read
+	 */
+	public static H2SessionMetrics read(final JDBCConnection jdbcConnection) throws DBException
+	{
+		final Result result = jdbcConnection.query(SELECT_SESSIONS);
+		try
+		{
+			result.next();
+			final Object longest = result.getObject(4);
+			return new H2SessionMetrics(result.getInt(0),result.getInt(1),result.getInt(2),
+					result.getInt(3),longest instanceof Number ? ((Number)longest).longValue() : 0);
+		}
+		finally
+		{
+			result.close();
+		}
+	}
+	
+	
+	/**
+	 * @return the number of open sessions
+	 */
+	public int getSessionCount()
+	{
+		return this.sessionCount;
+	}
+	
+	
+	/**
+	 * @return the number of sessions connected over TCP
+	 */
+	public int getRemoteSessionCount()
+	{
+		return this.remoteSessionCount;
+	}
+	
+	
+	/**
+	 * @return the number of sessions currently executing a statement
+	 */
+	public int getExecutingCount()
+	{
+		return this.executingCount;
+	}
+	
+	
+	/**
+	 * @return the number of sessions waiting for a lock
+	 */
+	public int getBlockedCount()
+	{
+		return this.blockedCount;
+	}
+	
+	
+	/**
+	 * @return the execution time of the longest running statement in
+	 *         milliseconds
+	 */
+	public long getLongestExecutionTime()
+	{
+		return this.longestExecutionTime;
+	}
+	
+	
+	@Override
+	public String toString()
+	{
+		return "sessions: " + this.sessionCount + " (" + this.remoteSessionCount
+				+ " remote), executing: " + this.executingCount + ", blocked: "
+				+ this.blockedCount + ", longest: " + this.longestExecutionTime + " ms";
+	}
+}
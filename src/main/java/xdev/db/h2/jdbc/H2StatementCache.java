@@ -0,0 +1,277 @@
+/*
+ * SqlEngine Database Adapter H2 - XAPI SqlEngine Database Adapter for H2
+ * Copyright © 2003 XDEV Software (https://xdev.software)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package xdev.db.h2.jdbc;
+
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+/**
+ * LRU cache of the {@link PreparedStatement}s of one physical JDBC
+ * connection, keyed by their SQL text.
+ * <p>
+ * A statement is checked out by {@link #checkOut(String, int)} and handed
+ * back by {@link #checkIn(String, int, PreparedStatement)}. While it is
+ * checked out, the same SQL gets a new, uncached statement. A handed back
+ * statement gets its initial maximum row count, fetch size, fetch
+ * direction and query timeout back, so settings of one user don't apply to
+ * the next one. Evicted
+ * statements are closed, unless they are checked out; these are closed when
+ * they are handed back.
+ * <p>
+ * Not thread-safe, like the connection it belongs to.
+ * 
+ * @see H2ConnectionProxy
+ */
+public class H2StatementCache
+{
+	private final Connection					connection;
+	private final Map<String, CachedStatement>	statements;
+	
+	private long								hits;
+	private long								misses;
+	private long								evictions;
+	
+	
+	public H2StatementCache(final Connection connection, final int maxSize)
+	{
+		this.connection = connection;
+		this.statements = new LinkedHashMap<String, CachedStatement>(16,0.75f,true)
+		{
+			@Override
+			protected boolean removeEldestEntry(final Map.Entry<String, CachedStatement> eldest)
+			{
+				if(size() > maxSize)
+				{
+					H2StatementCache.this.evictions++;
+					if(!eldest.getValue().checkedOut)
+					{
+						close(eldest.getValue().statement);
+					}
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+	
+	
+	/**
+	 * @return the physical connection the statements are prepared on
+	 */
+	public Connection getConnection()
+	{
+		return this.connection;
+	}
+	
+	
+	/**
+	 * Returns the cached statement for the SQL text or prepares a new one.
+	 * 
+	 * @param sql
+	 *            the SQL text
+	 * @param autoGeneratedKeys
+	 *            {@link Statement#RETURN_GENERATED_KEYS} or
+	 *            {@link Statement#NO_GENERATED_KEYS}
+	 * @return the prepared statement, which has to be handed back with
+	 *         {@link #checkIn(String, int, PreparedStatement)}
+	 * @throws SQLException
+	 *             if the statement can't be prepared
+	 */
+	public PreparedStatement checkOut(final String sql, final int autoGeneratedKeys)
+			throws SQLException
+	{
+		final String key = getKey(sql,autoGeneratedKeys);
+		CachedStatement cached = this.statements.get(key);
+		if(cached != null && !cached.checkedOut && !cached.statement.isClosed())
+		{
+			this.hits++;
+			cached.checkedOut = true;
+			return cached.statement;
+		}
+		
+		this.misses++;
+		final PreparedStatement statement = this.connection.prepareStatement(sql,
+				autoGeneratedKeys);
+		if(cached == null || !cached.checkedOut)
+		{
+			try
+			{
+				cached = new CachedStatement(statement);
+			}
+			catch(final SQLException e)
+			{
+				close(statement);
+				throw e;
+			}
+			cached.checkedOut = true;
+			this.statements.put(key,cached);
+		}
+		return statement;
+	}
+	
+	
+	/**
+	 * Hands back a statement returned by {@link #checkOut(String, int)}. A
+	 * cached statement is reset and kept open, all others are closed.
+	 * 
+	 * @return <code>true</code> if the statement is kept in the cache
+	 */
+	public boolean checkIn(final String sql, final int autoGeneratedKeys,
+			final PreparedStatement statement)
+	{
+		final CachedStatement cached = this.statements.get(getKey(sql,autoGeneratedKeys));
+		if(cached != null && cached.statement == statement)
+		{
+			try
+			{
+				final ResultSet resultSet = statement.getResultSet();
+				if(resultSet != null)
+				{
+					resultSet.close();
+				}
+				statement.clearParameters();
+				statement.clearBatch();
+				cached.resetSettings();
+				statement.clearWarnings();
+				cached.checkedOut = false;
+				return true;
+			}
+			catch(final SQLException e)
+			{
+				this.statements.remove(getKey(sql,autoGeneratedKeys));
+			}
+		}
+		
+		close(statement);
+		return false;
+	}
+	
+	
+	private static String getKey(final String sql, final int autoGeneratedKeys)
+	{
+		return autoGeneratedKeys == Statement.RETURN_GENERATED_KEYS ? "\u0000" + sql : sql;
+	}
+	
+	
+	public int size()
+	{
+		return this.statements.size();
+	}
+	
+	
+	public long getHits()
+	{
+		return this.hits;
+	}
+	
+	
+	public long getMisses()
+	{
+		return this.misses;
+	}
+	
+	
+	public long getEvictions()
+	{
+		return this.evictions;
+	}
+	
+	
+	/**
+	 * Closes and removes all cached statements, the counters are kept.
+	 */
+	public void clear()
+	{
+		for(final CachedStatement cached : this.statements.values())
+		{
+			close(cached.statement);
+		}
+		this.statements.clear();
+	}
+	
+	
+	private static void close(final PreparedStatement statement)
+	{
+		try
+		{
+			statement.close();
+		}
+		catch(final SQLException e)
+		{
+			e.printStackTrace();
+		}
+	}
+	
+	
+	@Override
+	public String toString()
+	{
+		return "hits=" + this.hits + ", misses=" + this.misses + ", evictions="
+				+ this.evictions + ", size=" + size();
+	}
+	
+	
+	
+	private static final class CachedStatement
+	{
+		final PreparedStatement	statement;
+		final int				maxRows;
+		final int				fetchSize;
+		final int				fetchDirection;
+		final int				queryTimeout;
+		boolean					checkedOut;
+		
+		
+		CachedStatement(final PreparedStatement statement) throws SQLException
+		{
+			this.statement = statement;
+			this.maxRows = statement.getMaxRows();
+			this.fetchSize = statement.getFetchSize();
+			this.fetchDirection = statement.getFetchDirection();
+			this.queryTimeout = statement.getQueryTimeout();
+		}
+		
+		
+		void resetSettings() throws SQLException
+		{
+			if(this.statement.getMaxRows() != this.maxRows)
+			{
+				this.statement.setMaxRows(this.maxRows);
+			}
+			if(this.statement.getFetchSize() != this.fetchSize)
+			{
+				this.statement.setFetchSize(this.fetchSize);
+			}
+			if(this.statement.getFetchDirection() != this.fetchDirection)
+			{
+				this.statement.setFetchDirection(this.fetchDirection);
+			}
+			if(this.statement.getQueryTimeout() != this.queryTimeout)
+			{
+				this.statement.setQueryTimeout(this.queryTimeout);
+			}
+		}
+	}
+}
@@ -0,0 +1,89 @@
+/*
+ * SqlEngine Database Adapter H2 - XAPI SqlEngine Database Adapter for H2
+ * Copyright © 2003 XDEV Software (https://xdev.software)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package xdev.db.h2.jdbc;
+
+
+import xdev.db.ColumnMetaData;
+import xdev.db.DBMetaData.TableInfo;
+import xdev.db.DBMetaData.TableMetaData;
+import xdev.db.Index;
+
+
+/**
+ * Table metadata with H2-specific additions.
+ */
+public class H2TableMetaData extends TableMetaData
+{
+	private static final long	serialVersionUID	= -4786514520924786425L;
+	
+	private final boolean		rowCountEstimated;
+	private final H2TableStorage	storage;
+	
+	
+	public H2TableMetaData(final TableInfo tableInfo, final ColumnMetaData[] columns,
+			final Index[] indices, final int rowCount, final boolean rowCountEstimated)
+	{
+		this(tableInfo,columns,indices,rowCount,rowCountEstimated,null);
+	}
+	
+	
+	/**
+	 * @param storage
+	 *            the storage of the table, <code>null</code> for the data
+	 *            source's {@link H2JDBCDataSource#TABLE_STORAGE}
+	 */
+	public H2TableMetaData(final TableInfo tableInfo, final ColumnMetaData[] columns,
+			final Index[] indices, final int rowCount, final boolean rowCountEstimated,
+			final H2TableStorage storage)
+	{
+		super(tableInfo,columns,indices,rowCount);
+		
+		this.rowCountEstimated = rowCountEstimated;
+		this.storage = storage;
+	}
+	
+	
+	/**
+	 * Creates metadata for a new table with a specific storage.
+	 */
+	public H2TableMetaData(final TableInfo tableInfo, final ColumnMetaData[] columns,
+			final Index[] indices, final H2TableStorage storage)
+	{
+		this(tableInfo,columns,indices,0,false,storage);
+	}
+	
+	
+	/**
+	 * @return <code>true</code> if the row count has been taken from H2's
+	 *         table statistics, <code>false</code> if the rows have been
+	 *         counted exactly
+	 */
+	public boolean isRowCountEstimated()
+	{
+		return this.rowCountEstimated;
+	}
+	
+	
+	/**
+	 * @return the storage of the table, or <code>null</code> if it is unknown
+	 */
+	public H2TableStorage getStorage()
+	{
+		return this.storage;
+	}
+}
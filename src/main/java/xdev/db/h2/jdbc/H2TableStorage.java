@@ -0,0 +1,138 @@
+/*
+ * SqlEngine Database Adapter H2 - XAPI SqlEngine Database Adapter for H2
+ * Copyright © 2003 XDEV Software (https://xdev.software)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package xdev.db.h2.jdbc;
+
+
+/**
+ * How H2 stores the rows of a table.
+ */
+public enum H2TableStorage
+{
+	/**
+	 * Rows are kept in the database file and read through the page cache,
+	 * the default for disk based databases.
+	 */
+	CACHED("cached","CREATE CACHED TABLE ",""),
+	
+	/**
+	 * All rows are kept in memory and persisted to the database file, for
+	 * small tables which are read often.
+	 */
+	MEMORY("memory","CREATE MEMORY TABLE ",""),
+	
+	/**
+	 * All rows are kept in memory only and are lost when the database is
+	 * closed. H2 reports these tables as {@link #MEMORY} tables, so the
+	 * storage can't be read back.
+	 */
+	NOT_PERSISTENT("not persistent","CREATE MEMORY TABLE "," NOT PERSISTENT"),
+	
+	/**
+	 * The table is visible to all sessions, its rows only to the session
+	 * which inserted them.
+	 */
+	GLOBAL_TEMPORARY("global temporary","CREATE GLOBAL TEMPORARY TABLE ",""),
+	
+	/**
+	 * The table only exists in the session which created it.
+	 */
+	LOCAL_TEMPORARY("local temporary","CREATE LOCAL TEMPORARY TABLE ","");
+	
+	private final String	storageName;
+	private final String	createPrefix;
+	private final String	createSuffix;
+	
+	
+	private H2TableStorage(final String storageName, final String createPrefix,
+			final String createSuffix)
+	{
+		this.storageName = storageName;
+		this.createPrefix = createPrefix;
+		this.createSuffix = createSuffix;
+	}
+	
+	
+	/**
+	 * @return the name used in the data source parameter
+	 */
+	public String getStorageName()
+	{
+		return this.storageName;
+	}
+	
+	
+	/**
+	 * @return the <code>CREATE ... TABLE </code> prefix of the statement
+	 */
+	public String getCreatePrefix()
+	{
+		return this.createPrefix;
+	}
+	
+	
+	/**
+	 * @return the suffix of the statement after the column definitions
+	 */
+	public String getCreateSuffix()
+	{
+		return this.createSuffix;
+	}
+	
+	
+	/**
+	 * @param storageName
+	 *            a storage name, e.g. <code>memory</code>
+	 * @return the storage
+	 * @throws IllegalArgumentException
+	 *             if there is no storage with this name
+	 */
+	public static H2TableStorage forName(final String storageName)
+			throws IllegalArgumentException
+	{
+		for(final H2TableStorage storage : values())
+		{
+			if(storage.storageName.equalsIgnoreCase(storageName.trim()))
+			{
+				return storage;
+			}
+		}
+		throw new IllegalArgumentException("Unknown table storage: " + storageName);
+	}
+	
+	
+	/**
+	 * @param storageType
+	 *            the <code>STORAGE_TYPE</code> of
+	 *            <code>INFORMATION_SCHEMA.TABLES</code>
+	 * @return the storage, or <code>null</code> if it is unknown
+	 */
+	public static H2TableStorage forStorageType(final String storageType)
+	{
+		if(storageType != null)
+		{
+			for(final H2TableStorage storage : values())
+			{
+				if(storage != NOT_PERSISTENT && storage.storageName.equalsIgnoreCase(storageType))
+				{
+					return storage;
+				}
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,114 @@
+/*
+ * SqlEngine Database Adapter H2 - XAPI SqlEngine Database Adapter for H2
+ * Copyright © 2003 XDEV Software (https://xdev.software)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package xdev.db.h2.jdbc;
+
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+/**
+ * Named sets of database settings for typical workloads, see
+ * {@link H2JDBCDataSource#TUNING_PROFILE}. Settings given explicitly on the
+ * data source take precedence over the ones of the profile.
+ */
+public enum H2TuningProfile
+{
+	/**
+	 * A large page cache for read-mostly databases.
+	 */
+	READ_HEAVY("read-heavy","CACHE_SIZE","262144","LOCK_TIMEOUT","10000"),
+	
+	/**
+	 * A large page cache and a long write delay for loading large amounts of
+	 * data, with a lock timeout long enough for long running transactions.
+	 */
+	BULK_LOAD("bulk-load","CACHE_SIZE","131072","WRITE_DELAY","2000","LOCK_TIMEOUT","60000"),
+	
+	/**
+	 * A small page cache and compressed pages for constrained environments.
+	 */
+	LOW_MEMORY("low-memory","CACHE_SIZE","4096","COMPRESS","TRUE");
+	
+	private final String				profileName;
+	private final Map<String, String>	settings;
+	
+	
+	private H2TuningProfile(final String profileName, final String... settings)
+	{
+		this.profileName = profileName;
+		final Map<String, String> map = new LinkedHashMap<>();
+		for(int i = 0; i < settings.length; i += 2)
+		{
+			map.put(settings[i],settings[i + 1]);
+		}
+		this.settings = Collections.unmodifiableMap(map);
+	}
+	
+	
+	/**
+	 * @return the name used in the data source parameter
+	 */
+	public String getProfileName()
+	{
+		return this.profileName;
+	}
+	
+	
+	/**
+	 * @return the URL settings of this profile
+	 */
+	public Map<String, String> getSettings()
+	{
+		return this.settings;
+	}
+	
+	
+	/**
+	 * @param profileName
+	 *            the name of a profile, e.g. <code>read-heavy</code>
+	 * @return the profile, or <code>null</code> if the name is empty
+	 * @throws IllegalArgumentException
+	 *             if there is no profile with this name
+	 */
+	public static H2TuningProfile forName(final String profileName)
+			throws IllegalArgumentException
+	{
+		if(profileName == null || profileName.trim().length() == 0)
+		{
+			return null;
+		}
+		
+		for(final H2TuningProfile profile : values())
+		{
+			if(profile.profileName.equalsIgnoreCase(profileName.trim()))
+			{
+				return profile;
+			}
+		}
+		
+		final StringBuilder sb = new StringBuilder("Unknown tuning profile: ").append(profileName)
+				.append(", expected one of");
+		for(final H2TuningProfile profile : values())
+		{
+			sb.append(' ').append(profile.profileName);
+		}
+		throw new IllegalArgumentException(sb.toString());
+	}
+}